@@ -0,0 +1,27 @@
+package com.geminiimageapp;
+
+import android.util.Base64;
+
+import com.geminiimageapp.engine.Base64Codec;
+
+/**
+ * 基于android.util.Base64的编解码实现
+ */
+public class AndroidBase64Codec implements Base64Codec {
+
+    @Override
+    public String encode(byte[] data) {
+        // 使用 NO_WRAP 标志，确保Base64字符串是单行连续的
+        return Base64.encodeToString(data, Base64.NO_WRAP);
+    }
+
+    @Override
+    public String encode(byte[] data, int offset, int length) {
+        return Base64.encodeToString(data, offset, length, Base64.NO_WRAP);
+    }
+
+    @Override
+    public byte[] decode(String base64) {
+        return Base64.decode(base64, Base64.DEFAULT);
+    }
+}
@@ -0,0 +1,261 @@
+package com.geminiimageapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.geminiimageapp.engine.Base64Codec;
+import com.geminiimageapp.engine.ByteArrayStreamPool;
+import com.geminiimageapp.engine.ImageSource;
+import com.geminiimageapp.engine.PayloadEncoder;
+import com.geminiimageapp.engine.PreparedImage;
+import com.geminiimageapp.engine.StreamingBase64;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.geminiimageapp.LogManager.*;
+
+/**
+ * 基于BitmapFactory的请求图片准备
+ * 源文件尺寸、格式和大小都在限制内时直接使用原始字节，否则解码、缩放后重新压缩为JPEG
+ */
+public class AndroidPayloadEncoder implements PayloadEncoder {
+    // 可以直接上传原始字节的图片格式和大小上限
+    private static final List<String> DEFAULT_PASSTHROUGH_FORMATS = Arrays.asList("image/jpeg", "image/png", "image/webp");
+    private static final int DEFAULT_PASSTHROUGH_MAX_BYTES = 4 * 1024 * 1024;
+    // JPEG压缩输出的缓冲区，所有实例共用；同时压缩的图片不多，超过8MB的不保留
+    private static final ByteArrayStreamPool JPEG_BUFFERS = new ByteArrayStreamPool(2, 8 * 1024 * 1024);
+
+    private final LogManager logManager = LogManager.getInstance();
+    private final Base64Codec base64Codec;
+    private final int maxSize;
+    private final int jpegQuality;
+    private final List<String> passthroughFormats;
+    private final long passthroughMaxBytes;
+
+    /**
+     * @param maxSize 图片最大边长
+     * @param jpegQuality 重新压缩时的JPEG质量
+     * @param passthroughFormats 可以直接上传原始字节的图片格式
+     * @param passthroughMaxBytes 直接上传的文件大小上限
+     */
+    public AndroidPayloadEncoder(Base64Codec base64Codec, int maxSize, int jpegQuality,
+                                 List<String> passthroughFormats, long passthroughMaxBytes) {
+        this.base64Codec = base64Codec;
+        this.maxSize = maxSize;
+        this.jpegQuality = jpegQuality;
+        this.passthroughFormats = passthroughFormats;
+        this.passthroughMaxBytes = passthroughMaxBytes;
+    }
+
+    /**
+     * 按配置文件的image部分创建，缺少的配置项使用默认值
+     */
+    public static AndroidPayloadEncoder fromConfig(JsonObject config, Base64Codec base64Codec) {
+        return fromSection(getSection(config, "image"), base64Codec);
+    }
+
+    /**
+     * 受限网络上使用的较小规格：image部分的配置加上network.constrainedImage中的覆盖项
+     */
+    public static AndroidPayloadEncoder constrainedFromConfig(JsonObject config, Base64Codec base64Codec) {
+        JsonObject image = getSection(config, "image").deepCopy();
+        image.addProperty("maxSize", 1024);
+        image.addProperty("jpegQuality", 80);
+        image.addProperty("passthroughMaxBytes", 1024 * 1024);
+        JsonObject network = getSection(config, "network");
+        if (network.has("constrainedImage") && network.get("constrainedImage").isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : network.getAsJsonObject("constrainedImage").entrySet()) {
+                image.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return fromSection(image, base64Codec);
+    }
+
+    private static JsonObject getSection(JsonObject config, String name) {
+        return config.has(name) && config.get(name).isJsonObject() ? config.getAsJsonObject(name) : new JsonObject();
+    }
+
+    private static AndroidPayloadEncoder fromSection(JsonObject image, Base64Codec base64Codec) {
+        List<String> passthroughFormats = DEFAULT_PASSTHROUGH_FORMATS;
+        if (image.has("passthroughFormats") && image.get("passthroughFormats").isJsonArray()) {
+            passthroughFormats = new ArrayList<>();
+            for (JsonElement element : image.getAsJsonArray("passthroughFormats")) {
+                passthroughFormats.add(element.getAsString());
+            }
+        }
+        return new AndroidPayloadEncoder(base64Codec,
+                image.has("maxSize") ? image.get("maxSize").getAsInt() : 2048,
+                image.has("jpegQuality") ? image.get("jpegQuality").getAsInt() : 90,
+                passthroughFormats,
+                image.has("passthroughMaxBytes") ? image.get("passthroughMaxBytes").getAsLong() : DEFAULT_PASSTHROUGH_MAX_BYTES);
+    }
+
+    @Override
+    public PreparedImage encode(ImageSource source) throws IOException {
+        PreparedImage image = readOriginalImage(source);
+        if (image != null) {
+            return image;
+        }
+
+        Bitmap bitmap = decodeBitmap(source);
+        logManager.d(LOG_IMAGE, "图片读取成功，尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+
+        logManager.d(LOG_IMAGE, "开始将图片转换为Base64");
+        String base64Image = bitmapToBase64(bitmap);
+        bitmap.recycle();
+        logManager.d(LOG_IMAGE, "图片成功转换为Base64，长度: " + base64Image.length() + "字符");
+        return new PreparedImage("image/jpeg", base64Image, false);
+    }
+
+    /**
+     * 尝试直接读取原始图片字节并编码为Base64，跳过Bitmap解码和JPEG重新压缩
+     * @return 不满足直传条件或读取失败时返回null，由调用方走解码压缩流程
+     */
+    private PreparedImage readOriginalImage(ImageSource source) {
+        // 只读取图片边界和格式，不分配像素内存
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream boundsStream = source.open()) {
+            BitmapFactory.decodeStream(boundsStream, null, options);
+        } catch (Exception e) {
+            logManager.w(LOG_IMAGE, "读取图片边界失败，使用解码流程: " + e.getMessage());
+            return null;
+        }
+
+        String mimeType = options.outMimeType;
+        if (mimeType == null && source instanceof UriImageSource) {
+            mimeType = ((UriImageSource) source).getType();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0
+                || options.outWidth > maxSize || options.outHeight > maxSize) {
+            logManager.d(LOG_IMAGE, "图片尺寸 " + options.outWidth + "x" + options.outHeight + " 不满足直传条件");
+            return null;
+        }
+        if (mimeType == null || !passthroughFormats.contains(mimeType)) {
+            logManager.d(LOG_IMAGE, "图片格式 " + mimeType + " 不在直传格式列表中");
+            return null;
+        }
+
+        long length = source.length();
+        if (length > passthroughMaxBytes) {
+            logManager.d(LOG_IMAGE, "图片文件大小 " + length + "字节超过直传上限 " + passthroughMaxBytes + "字节");
+            return null;
+        }
+
+        // 原始字节经直接缓冲区分块读取并编码，输出按Base64长度预先分配
+        try (InputStream inputStream = source.open();
+             ReadableByteChannel channel = openChannel(inputStream)) {
+            String base64Image = StreamingBase64.encode(channel, length, passthroughMaxBytes);
+            if (base64Image == null) {
+                logManager.d(LOG_IMAGE, "图片文件超过直传上限 " + passthroughMaxBytes + "字节，使用解码流程");
+                return null;
+            }
+            logManager.d(LOG_IMAGE, "图片直传: " + options.outWidth + "x" + options.outHeight + ", 格式: " + mimeType
+                    + ", 原始大小: " + length + "字节, Base64长度: " + base64Image.length() + "字符");
+            return new PreparedImage(mimeType, base64Image, true);
+        } catch (Exception e) {
+            logManager.w(LOG_IMAGE, "直接读取原始图片失败，使用解码流程: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 文件输入流直接使用FileChannel，读入直接缓冲区时不经过中间的堆数组
+     */
+    private static ReadableByteChannel openChannel(InputStream inputStream) {
+        if (inputStream instanceof FileInputStream) {
+            return ((FileInputStream) inputStream).getChannel();
+        }
+        return Channels.newChannel(inputStream);
+    }
+
+    /**
+     * 解码图片，超过最大尺寸时在解码过程中缩小，不分配原尺寸的Bitmap
+     * 先用inSampleSize按2的幂缩小到不小于目标尺寸，再用密度缩放精确缩小到目标尺寸
+     */
+    private Bitmap decodeBitmap(ImageSource source) throws IOException {
+        logManager.d(LOG_IMAGE, "从URI读取图片: " + source.describe());
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream boundsStream = source.open()) {
+            BitmapFactory.decodeStream(boundsStream, null, bounds);
+        }
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (longest > maxSize) {
+            int sampleSize = 1;
+            while (longest / (sampleSize * 2) >= maxSize) {
+                sampleSize *= 2;
+            }
+            options.inSampleSize = sampleSize;
+            int sampledLongest = longest / sampleSize;
+            if (sampledLongest > maxSize) {
+                options.inScaled = true;
+                options.inDensity = sampledLongest;
+                options.inTargetDensity = maxSize;
+            }
+            logManager.d(LOG_IMAGE, "原图尺寸 " + bounds.outWidth + "x" + bounds.outHeight + " 超过 " + maxSize
+                    + "，解码时缩小，采样: " + sampleSize);
+        }
+
+        Bitmap bitmap;
+        try (InputStream inputStream = source.open()) {
+            bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("图片解码失败，返回null");
+        }
+        logManager.d(LOG_IMAGE, "图片读取成功，尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight() + ", 格式: ARGB_8888");
+
+        // 密度缩放的取整误差可能使长边略大于上限，再精确缩放一次
+        if (bitmap.getWidth() > maxSize || bitmap.getHeight() > maxSize) {
+            Bitmap scaled = scaleBitmap(bitmap, maxSize);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+            logManager.d(LOG_IMAGE, "图片压缩完成，新尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+        }
+        return bitmap;
+    }
+
+    private String bitmapToBase64(Bitmap bitmap) throws IOException {
+        logManager.d(LOG_IMAGE, "开始将Bitmap转换为Base64");
+        // 压缩到按预估大小预先分配的复用缓冲区，Base64直接编码其内部数组，不再复制
+        int expectedSize = expectedJpegSize(bitmap.getWidth(), bitmap.getHeight(), jpegQuality);
+        ByteArrayStreamPool.Stream buffer = JPEG_BUFFERS.acquire(expectedSize);
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, jpegQuality, buffer)) {
+                throw new IOException("Bitmap压缩失败");
+            }
+            logManager.d(LOG_IMAGE, "Bitmap压缩完成，JPEG质量: " + jpegQuality + "%, 大小: " + buffer.size()
+                    + "字节, 预估: " + expectedSize + "字节");
+
+            String base64String = base64Codec.encode(buffer.array(), 0, buffer.size());
+            logManager.d(LOG_IMAGE, "Base64编码完成，长度: " + base64String.length() + "字符");
+            return base64String;
+        } finally {
+            JPEG_BUFFERS.release(buffer);
+        }
+    }
+
+    /**
+     * 预估JPEG压缩后的大小：照片在质量90左右约为每像素0.45字节，质量越高越大
+     * 略微偏大，大多数情况下压缩过程中不需要扩容
+     */
+    static int expectedJpegSize(int width, int height, int quality) {
+        double bytesPerPixel = 0.1 + 0.004 * Math.max(0, Math.min(100, quality));
+        return (int) Math.min(Integer.MAX_VALUE - 8, (long) width * height * bytesPerPixel) + 1024;
+    }
+}
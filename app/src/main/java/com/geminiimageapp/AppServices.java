@@ -0,0 +1,263 @@
+package com.geminiimageapp;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Environment;
+
+import com.geminiimageapp.engine.NetworkGate;
+import com.geminiimageapp.engine.OutputStorage;
+import com.geminiimageapp.engine.PromptBuilder;
+import com.geminiimageapp.engine.PromptTemplate;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import static com.geminiimageapp.LogManager.*;
+
+/**
+ * 应用级共享资源：配置、OkHttp客户端、通知渠道和后台线程
+ * 应用启动时在后台预先准备，第一次点击生成时服务不必再等待配置解析、资源复制和渠道创建
+ */
+public class AppServices {
+    public static final String CHANNEL_ID = "GeminiImageGeneration";
+    public static final String PREFS_NAME = "GeminiImageApp";
+    private static final String CONFIG_FILE = "config.json";
+
+    private static volatile AppServices instance;
+
+    private final Context context;
+    private final LogManager logManager = LogManager.getInstance();
+    private final Gson gson = new Gson();
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+
+    private JsonObject config;
+    // 已加载的外部配置文件修改时间，文件被修改后重新加载
+    private long configModified = -1;
+    private OkHttpClient httpClient;
+    private OutputStorage outputStorage;
+    private NetworkGate networkGate;
+    // 已编译的提示词模板和编译时使用的配置，配置重新加载后重新编译
+    private Map<String, PromptTemplate> promptTemplates;
+    private JsonObject promptTemplatesConfig;
+    private boolean channelCreated;
+
+    private AppServices(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static AppServices getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AppServices.class) {
+                if (instance == null) {
+                    instance = new AppServices(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 在后台线程中预先加载配置、创建HTTP客户端和通知渠道，并读取SharedPreferences
+     */
+    public void warmUp() {
+        backgroundExecutor.execute(() -> {
+            long start = System.currentTimeMillis();
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getAll();
+            getConfig();
+            getPromptTemplates();
+            getHttpClient();
+            getOutputStorage();
+            getNetworkGate();
+            ensureNotificationChannel();
+            logManager.d(LOG_INIT, "后台预热完成，耗时: " + (System.currentTimeMillis() - start) + "ms");
+        });
+    }
+
+    /**
+     * 在共享的后台线程中执行，避免在主线程中读写文件
+     */
+    public void runInBackground(Runnable task) {
+        backgroundExecutor.execute(task);
+    }
+
+    /**
+     * 获取配置，外部配置文件被修改后重新加载
+     */
+    public synchronized JsonObject getConfig() {
+        File externalConfigFile = new File(context.getExternalFilesDir(null), CONFIG_FILE);
+        long modified = externalConfigFile.exists() ? externalConfigFile.lastModified() : 0;
+        if (config == null || modified != configModified) {
+            loadConfig(externalConfigFile);
+            configModified = externalConfigFile.exists() ? externalConfigFile.lastModified() : 0;
+        }
+        return config;
+    }
+
+    /**
+     * 配置中prompts部分的命名模板，编译一次后缓存，外部配置文件被修改后重新编译
+     */
+    public synchronized Map<String, PromptTemplate> getPromptTemplates() {
+        JsonObject current = getConfig();
+        if (promptTemplates == null || promptTemplatesConfig != current) {
+            Map<String, String> sources = new LinkedHashMap<>();
+            if (current.has("prompts") && current.get("prompts").isJsonObject()) {
+                for (Map.Entry<String, JsonElement> entry : current.getAsJsonObject("prompts").entrySet()) {
+                    if (entry.getValue().isJsonPrimitive()) {
+                        sources.put(entry.getKey(), entry.getValue().getAsString());
+                    }
+                }
+            }
+            promptTemplates = PromptBuilder.compileAll(sources, logManager);
+            promptTemplatesConfig = current;
+        }
+        return promptTemplates;
+    }
+
+    /**
+     * 共享的OkHttp客户端，所有请求共用连接池和调度器
+     */
+    public synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            // 请求在OkHttp调度器中异步执行，默认每个主机最多5个并发，批量任务加上对冲请求可能超过
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequestsPerHost(16);
+            // 增加超时设置的OkHttp客户端
+            httpClient = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectTimeout(30, TimeUnit.SECONDS)
+                    .readTimeout(60, TimeUnit.SECONDS)
+                    .writeTimeout(60, TimeUnit.SECONDS)
+                    .build();
+            logManager.d(LOG_INIT, "HTTP客户端创建完成");
+        }
+        return httpClient;
+    }
+
+    /**
+     * 生成图片的输出目录，整个应用共用一份索引，服务重新创建时不必重新扫描
+     */
+    public synchronized OutputStorage getOutputStorage() {
+        if (outputStorage == null) {
+            JsonObject storage = getConfig().has("storage") ? getConfig().getAsJsonObject("storage") : new JsonObject();
+            long quotaBytes = (storage.has("quotaMB") ? storage.get("quotaMB").getAsLong() : 1024) * 1024L * 1024L;
+            File rootDir = new File(context.getExternalFilesDir(Environment.DIRECTORY_PICTURES), "GeminiGenerated");
+            outputStorage = new OutputStorage(rootDir, quotaBytes, logManager);
+            logManager.d(LOG_INIT, "输出目录: " + rootDir.getAbsolutePath() + "，配额: " + quotaBytes + "字节");
+        }
+        return outputStorage;
+    }
+
+    /**
+     * 网络状态闸门，应用启动后一直监听默认网络的变化，所有任务共用
+     */
+    public synchronized NetworkGate getNetworkGate() {
+        if (networkGate == null) {
+            JsonObject network = getConfig().has("network") ? getConfig().getAsJsonObject("network") : new JsonObject();
+            int slowUpstreamKbps = network.has("slowUpstreamKbps") ? network.get("slowUpstreamKbps").getAsInt() : 1000;
+            boolean deferOnMetered = network.has("deferOnMetered") && network.get("deferOnMetered").getAsBoolean();
+            long maxWaitMillis = TimeUnit.MINUTES.toMillis(
+                    network.has("maxWaitMinutes") ? network.get("maxWaitMinutes").getAsLong() : 30);
+            networkGate = new NetworkGate(slowUpstreamKbps, deferOnMetered, maxWaitMillis, logManager);
+            NetworkMonitor.start(context, networkGate);
+            logManager.d(LOG_INIT, "网络监听已启动，受限网络上行阈值: " + slowUpstreamKbps + "kbps，"
+                    + (deferOnMetered ? "计费网络上等待不计费网络" : "计费网络上使用较小的图片"));
+        }
+        return networkGate;
+    }
+
+    public synchronized void ensureNotificationChannel() {
+        if (channelCreated) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            logManager.d(LOG_INIT, "创建通知渠道");
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Gemini Image Generation",
+                    NotificationManager.IMPORTANCE_LOW);
+
+            NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+            notificationManager.createNotificationChannel(channel);
+            logManager.d(LOG_INIT, "通知渠道创建完成: " + CHANNEL_ID);
+        }
+        channelCreated = true;
+    }
+
+    /**
+     * 加载配置文件
+     */
+    private void loadConfig(File externalConfigFile) {
+        boolean loadedFromExternal = false;
+
+        // 首先尝试从外部存储加载配置文件
+        if (externalConfigFile.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(externalConfigFile))) {
+                logManager.d(LOG_INIT, "尝试从外部存储加载配置文件: " + externalConfigFile.getAbsolutePath());
+                config = gson.fromJson(reader, JsonObject.class);
+                loadedFromExternal = true;
+                logManager.d(LOG_INIT, "从外部存储成功加载配置文件");
+            } catch (Exception e) {
+                logManager.e(LOG_ERROR_TAG, "从外部存储加载配置文件失败", e);
+                // 如果从外部存储加载失败，会继续尝试从内部assets加载
+            }
+        }
+
+        // 如果从外部存储加载失败，则从内部assets加载
+        if (!loadedFromExternal) {
+            try (Reader reader = new InputStreamReader(context.getAssets().open(CONFIG_FILE))) {
+                logManager.d(LOG_INIT, "从内部assets加载配置文件");
+                config = gson.fromJson(reader, JsonObject.class);
+                logManager.d(LOG_INIT, "从内部assets成功加载配置文件");
+            } catch (IOException e) {
+                logManager.e(LOG_ERROR_TAG, "从内部assets加载配置文件失败", e);
+                config = new JsonObject(); // 创建空配置，避免空指针异常
+            }
+            // 将内部配置文件复制到外部存储，方便用户修改
+            copyConfigToExternalStorage(externalConfigFile);
+        }
+    }
+
+    /**
+     * 将内部配置文件复制到外部存储
+     */
+    private void copyConfigToExternalStorage(File externalConfigFile) {
+        // 如果外部配置文件已存在，不覆盖
+        if (externalConfigFile.exists()) {
+            logManager.d(LOG_INIT, "外部配置文件已存在，不进行复制");
+            return;
+        }
+
+        logManager.d(LOG_INIT, "将内部配置文件复制到外部存储: " + externalConfigFile.getAbsolutePath());
+        try (InputStream is = context.getAssets().open(CONFIG_FILE);
+             FileOutputStream fos = new FileOutputStream(externalConfigFile)) {
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = is.read(buffer)) > 0) {
+                fos.write(buffer, 0, length);
+            }
+            fos.flush();
+            logManager.d(LOG_INIT, "配置文件成功复制到外部存储");
+        } catch (Exception e) {
+            logManager.e(LOG_ERROR_TAG, "复制配置文件到外部存储失败", e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.geminiimageapp;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.geminiimageapp.engine.NetworkGate;
+import com.geminiimageapp.engine.PayloadEncoder;
+import com.geminiimageapp.engine.PreparedImage;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import static com.geminiimageapp.LogManager.*;
+
+/**
+ * 拍照后立即在后台准备请求用的图片数据（解码时直接缩小到上限尺寸、压缩、编码），
+ * 用户填写参数的同时完成，点击生成时服务直接使用，不必再读取和解码全尺寸照片
+ * 按拍照时的网络状况选择图片规格，生成时网络状况已经变化则重新准备；只保留最近一次拍照的结果
+ */
+public class CapturedPayloads {
+    private static final CapturedPayloads INSTANCE = new CapturedPayloads();
+
+    private final LogManager logManager = LogManager.getInstance();
+    private final ExecutorService encodeExecutor = Executors.newSingleThreadExecutor();
+
+    private Uri capturedUri;
+    // 准备时是否使用了受限网络的图片规格
+    private boolean capturedConstrained;
+    private FutureTask<PreparedImage> payload;
+
+    private CapturedPayloads() {
+    }
+
+    public static CapturedPayloads getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始准备拍摄的照片，取消上一张照片尚未完成的准备
+     */
+    public synchronized void prepare(Context context, Uri uri) {
+        if (payload != null) {
+            payload.cancel(true);
+        }
+        Context appContext = context.getApplicationContext();
+        UriImageSource source = new UriImageSource(appContext.getContentResolver(), uri);
+        AppServices services = AppServices.getInstance(appContext);
+        boolean constrained = services.getNetworkGate().isConstrained();
+        capturedUri = uri;
+        capturedConstrained = constrained;
+        payload = new FutureTask<>(() -> {
+            long start = System.currentTimeMillis();
+            AndroidPayloadEncoder encoder = constrained
+                    ? AndroidPayloadEncoder.constrainedFromConfig(services.getConfig(), new AndroidBase64Codec())
+                    : AndroidPayloadEncoder.fromConfig(services.getConfig(), new AndroidBase64Codec());
+            PreparedImage image = encoder.encode(source);
+            logManager.d(LOG_IMAGE, "拍摄的照片已在后台准备完成，耗时: " + (System.currentTimeMillis() - start) + "ms");
+            return image;
+        });
+        encodeExecutor.execute(payload);
+        logManager.d(LOG_IMAGE, "开始在后台准备拍摄的照片: " + uri);
+    }
+
+    /**
+     * 取出照片准备好的数据，仍在准备时等待
+     * @param constrained 当前是否为受限网络
+     * @return 不是最近拍摄的照片、图片规格与当前网络不符或准备失败时返回null
+     */
+    public PreparedImage get(Uri uri, boolean constrained) throws InterruptedException {
+        FutureTask<PreparedImage> task;
+        synchronized (this) {
+            if (payload == null || !uri.equals(capturedUri)) {
+                return null;
+            }
+            if (constrained != capturedConstrained) {
+                logManager.d(LOG_IMAGE, "拍照后网络状况已变化，按当前网络重新准备图片");
+                return null;
+            }
+            task = payload;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            logManager.w(LOG_IMAGE, "后台准备照片失败，重新准备: " + e.getCause().getMessage());
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 包装图片编码器：拍摄的照片已按当前网络的规格准备好时直接使用，否则交给原编码器
+     */
+    public PayloadEncoder wrap(PayloadEncoder fallback, NetworkGate networkGate) {
+        return source -> {
+            if (source instanceof UriImageSource) {
+                try {
+                    PreparedImage image = get(((UriImageSource) source).getUri(), networkGate.isConstrained());
+                    if (image != null) {
+                        logManager.d(LOG_IMAGE, "使用拍照后预先准备的图片数据");
+                        return image;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待照片准备时被中断");
+                }
+            }
+            return fallback.encode(source);
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.geminiimageapp;
+
+import android.app.Application;
+
+/**
+ * 应用入口，启动时在后台预热配置、HTTP客户端和通知渠道
+ */
+public class GeminiApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        AppServices.getInstance(this).warmUp();
+    }
+}
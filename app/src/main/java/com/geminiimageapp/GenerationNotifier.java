@@ -0,0 +1,122 @@
+package com.geminiimageapp;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * 生成进度通知控制器
+ * 复用同一个NotificationCompat.Builder，并限制更新频率，避免超过系统通知频率限制而被丢弃
+ */
+public class GenerationNotifier {
+    // 两次通知更新之间的最小间隔，即每秒最多4次
+    private static final long MIN_UPDATE_INTERVAL_MS = 250;
+
+    private final NotificationManager notificationManager;
+    private final NotificationCompat.Builder builder;
+    private final int notificationId;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private int total;
+    private int completed;
+    private long lastNotifyAt;
+    private boolean flushScheduled;
+
+    public GenerationNotifier(Context context, String channelId, int notificationId) {
+        this.notificationId = notificationId;
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        this.builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle("Gemini图像生成器")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(pendingIntent)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true);
+    }
+
+    /**
+     * 构建当前通知，用于startForeground
+     */
+    public synchronized Notification build(String message) {
+        builder.setContentText(message);
+        return builder.build();
+    }
+
+    /**
+     * 开始一个任务，显示已用时间和确定进度
+     * @param total 需要生成的图片总数
+     * @param completed 已经完成的数量（恢复任务时不为0）
+     */
+    public synchronized void startJob(int total, int completed) {
+        this.total = total;
+        this.completed = completed;
+        builder.setWhen(System.currentTimeMillis())
+                .setShowWhen(true)
+                .setUsesChronometer(true)
+                .setProgress(total, completed, false);
+        notifyNow();
+    }
+
+    /**
+     * 完成若干张图片
+     */
+    public synchronized void addCompleted(int count) {
+        completed = Math.min(total, completed + count);
+        builder.setProgress(total, completed, false);
+        notifyThrottled();
+    }
+
+    /**
+     * 更新通知文字，频率超过限制时合并到下一次更新
+     */
+    public synchronized void update(String message) {
+        builder.setContentText(message);
+        notifyThrottled();
+    }
+
+    /**
+     * 任务结束，移除进度条并立即显示最终状态
+     */
+    public synchronized void finishJob(String message) {
+        builder.setContentText(message)
+                .setUsesChronometer(false)
+                .setProgress(0, 0, false);
+        notifyNow();
+    }
+
+    private void notifyThrottled() {
+        long elapsed = SystemClock.elapsedRealtime() - lastNotifyAt;
+        if (elapsed >= MIN_UPDATE_INTERVAL_MS) {
+            notifyNow();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, MIN_UPDATE_INTERVAL_MS - elapsed);
+        }
+    }
+
+    private synchronized void flush() {
+        if (flushScheduled) {
+            notifyNow();
+        }
+    }
+
+    private void notifyNow() {
+        if (flushScheduled) {
+            flushScheduled = false;
+            handler.removeCallbacks(flushRunnable);
+        }
+        lastNotifyAt = SystemClock.elapsedRealtime();
+        notificationManager.notify(notificationId, builder.build());
+    }
+}
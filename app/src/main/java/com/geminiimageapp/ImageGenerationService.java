@@ -1,83 +1,133 @@
 package com.geminiimageapp;
 
-import okhttp3.logging.HttpLoggingInterceptor;
 import android.app.IntentService;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.Build;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.MediaStore;
-import android.util.Base64;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
+import com.geminiimageapp.engine.AdaptiveConcurrencyLimit;
+import com.geminiimageapp.engine.ApiKeyPool;
+import com.geminiimageapp.engine.Base64Codec;
+import com.geminiimageapp.engine.BatchScheduler;
+import com.geminiimageapp.engine.EndpointRouter;
+import com.geminiimageapp.engine.FileOutputSink;
+import com.geminiimageapp.engine.GenerationEngine;
+import com.geminiimageapp.engine.GenerationJob;
+import com.geminiimageapp.engine.GenerationResult;
+import com.geminiimageapp.engine.HedgingTransport;
+import com.geminiimageapp.engine.JobJournal;
+import com.geminiimageapp.engine.KeyPoolTransport;
+import com.geminiimageapp.engine.LatencyTracker;
+import com.geminiimageapp.engine.NetworkAwarePayloadEncoder;
+import com.geminiimageapp.engine.NetworkGate;
+import com.geminiimageapp.engine.OkHttpTransport;
+import com.geminiimageapp.engine.OutputSink;
+import com.geminiimageapp.engine.PayloadEncoder;
+import com.geminiimageapp.engine.PayloadPrefetcher;
+import com.geminiimageapp.engine.PreparedImage;
+import com.geminiimageapp.engine.PromptBuilder;
+import com.geminiimageapp.engine.PromptTemplate;
+import com.geminiimageapp.engine.ResponseCache;
+import com.geminiimageapp.engine.SingleFlight;
+import com.geminiimageapp.engine.ThrottledTransport;
+import com.geminiimageapp.engine.TokenBucket;
+import com.geminiimageapp.engine.Transport;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-
 import static com.geminiimageapp.LogManager.*;
 
 public class ImageGenerationService extends IntentService {
     private static final String TAG = "GeminiImageGen";
-    private static final String CHANNEL_ID = "GeminiImageGeneration";
     private static final int NOTIFICATION_ID = 1;
-    private static final String CONFIG_FILE = "config.json";
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    private static final String DEFAULT_ENDPOINT = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash-image-preview:generateContent";
+    
+    // 合并同时进行的相同任务，任务结束后再提交会重新生成
+    private static final SingleFlight<List<String>> IN_FLIGHT = new SingleFlight<>();
+    
+    // 按主机共享的客户端限流状态，服务重新创建后继续沿用已经学到的并发上限
+    private static final Map<String, TokenBucket> RATE_LIMITS = new HashMap<>();
+    private static final Map<String, AdaptiveConcurrencyLimit> CONCURRENCY_LIMITS = new HashMap<>();
+    // 按主机记录的近期请求延迟，用于决定何时发出对冲请求
+    private static final Map<String, LatencyTracker> LATENCY_TRACKERS = new HashMap<>();
+    // 配置了多个API密钥时共用的密钥池，冷却状态和使用统计在服务重新创建后保留
+    private static final ApiKeyPool KEY_POOL = new ApiKeyPool(LogManager.getInstance());
+    // 配置了多个端点时共用的路由和它下面各端点的传输，端点的健康状态在服务重新创建后保留，
+    // 端点、密钥或各层传输的配置改变时才重新创建
+    private static EndpointRouter sharedRouter;
+    private static String sharedRouterConfig;
+    private static final List<OkHttpTransport> ROUTER_OK_HTTP_TRANSPORTS = new ArrayList<>();
+    private static final List<HedgingTransport> ROUTER_HEDGING_TRANSPORTS = new ArrayList<>();
+    
+    // 任务ID和恢复未完成任务的Action
+    public static final String EXTRA_JOB_ID = "jobId";
+    public static final String ACTION_RESUME_JOB = "com.geminiimageapp.action.RESUME_JOB";
+    
+    // 批量任务的原图列表，多于一张时按批量任务处理
+    public static final String EXTRA_IMAGE_URIS = "imageUris";
+    
+    // 使用的提示词模板名称（config.json中prompts部分的键），未指定时使用default
+    public static final String EXTRA_PROMPT_TEMPLATE = "promptTemplate";
     
     // 日志管理器
     private final LogManager logManager = LogManager.getInstance();
     
     // 配置信息
     private JsonObject config;
+    
+    // 生成进度通知
+    private GenerationNotifier notifier;
+    
+    // 响应缓存，配置中未启用时为null
+    private ResponseCache responseCache;
 
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final Executor executor = Executors.newSingleThreadExecutor();
+    // 生成引擎，Android相关的部分由本服务注入
+    private GenerationEngine engine;
     
-    // 增加超时设置的OkHttp客户端
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
-            
-    private final Gson gson = new Gson();
+    // 排队任务的图片预先准备，与当前任务的网络请求重叠进行
+    private PayloadPrefetcher payloadPrefetcher;
+    
+    // 实际发送请求的传输（每个端点一个），记录压缩和流量统计
+    private final List<OkHttpTransport> okHttpTransports = new ArrayList<>();
+    
+    // 配置了多个端点时的路由（即sharedRouter），只有一个端点时为null
+    private EndpointRouter endpointRouter;
+    
+    // 本服务创建的对冲请求，服务销毁时停止；配置中未启用或使用共用的路由时为空
+    private final List<HedgingTransport> hedgingTransports = new ArrayList<>();
+    
+    // 网络状态，没有网络时请求排队等待
+    private NetworkGate networkGate;
+    
+    // 配置中的api.keys不为空时使用密钥池，请求在多个密钥之间分配
+    private boolean keyPoolEnabled;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Base64Codec base64Codec = new AndroidBase64Codec();
 
     public ImageGenerationService() {
         super("ImageGenerationService");
+        // 进程在任务处理中被杀死时，系统重启服务并重新投递Intent，由任务日志恢复进度
+        setIntentRedelivery(true);
         logManager.d(LOG_INIT, "服务创建");
     }
 
@@ -85,93 +135,60 @@ public class ImageGenerationService extends IntentService {
     public void onCreate() {
         super.onCreate();
         logManager.d(LOG_INIT, "onCreate()调用");
-        createNotificationChannel();
-        startForeground(NOTIFICATION_ID, createNotification("正在准备生成图片..."));
-        loadConfig();
+        // 配置、HTTP客户端和通知渠道通常已在应用启动时预热
+        AppServices appServices = AppServices.getInstance(this);
+        appServices.ensureNotificationChannel();
+        notifier = new GenerationNotifier(this, AppServices.CHANNEL_ID, NOTIFICATION_ID);
+        startForeground(NOTIFICATION_ID, notifier.build("正在准备生成图片..."));
+        config = appServices.getConfig();
+        initResponseCache();
+        engine = createEngine();
         logManager.d(LOG_INIT, "前台服务启动完成");
     }
     
-/**
- * 加载配置文件
- */
-private void loadConfig() {
-    boolean loadedFromExternal = false;
+    /**
+     * 根据配置初始化响应缓存
+     */
+    private void initResponseCache() {
+        if (!getConfigBoolean("cache", "enabled", false)) {
+            return;
+        }
+        long ttlMillis = TimeUnit.MINUTES.toMillis(getConfigInt("cache", "ttlMinutes", 24 * 60));
+        long maxSizeBytes = getConfigInt("cache", "maxSizeMB", 200) * 1024L * 1024L;
+        responseCache = new ResponseCache(new File(getCacheDir(), "responses"), ttlMillis, maxSizeBytes, logManager);
+        logManager.d(LOG_INIT, "响应缓存已启用，有效期: " + ttlMillis / 60000 + "分钟，大小上限: " + maxSizeBytes + "字节");
+    }
     
-    // 首先尝试从外部存储加载配置文件
-    File externalConfigFile = new File(getExternalFilesDir(null), CONFIG_FILE);
-    if (externalConfigFile.exists()) {
+    /**
+     * 从配置文件获取字符串值
+     */
+    private String getConfigString(String section, String key, String defaultValue) {
         try {
-            logManager.d(LOG_INIT, "尝试从外部存储加载配置文件: " + externalConfigFile.getAbsolutePath());
-            FileInputStream fis = new FileInputStream(externalConfigFile);
-            Reader reader = new InputStreamReader(fis);
-            config = gson.fromJson(reader, JsonObject.class);
-            fis.close();
-            loadedFromExternal = true;
-            logManager.d(LOG_INIT, "从外部存储成功加载配置文件");
+            return config.getAsJsonObject(section).get(key).getAsString();
         } catch (Exception e) {
-            logManager.e(LOG_ERROR_TAG, "从外部存储加载配置文件失败", e);
-            // 如果从外部存储加载失败，会继续尝试从内部assets加载
+            logManager.w(LOG_ERROR_TAG, "获取配置项失败: " + section + "." + key + "，使用默认值: " + defaultValue);
+            return defaultValue;
         }
     }
     
-    // 如果从外部存储加载失败，则从内部assets加载
-    if (!loadedFromExternal) {
+    /**
+     * 从配置文件获取布尔值
+     */
+    private boolean getConfigBoolean(String section, String key, boolean defaultValue) {
         try {
-            logManager.d(LOG_INIT, "从内部assets加载配置文件");
-            InputStream is = getAssets().open(CONFIG_FILE);
-            Reader reader = new InputStreamReader(is);
-            config = gson.fromJson(reader, JsonObject.class);
-            is.close();
-            logManager.d(LOG_INIT, "从内部assets成功加载配置文件");
-            
-            // 将内部配置文件复制到外部存储，方便用户修改
-            copyConfigToExternalStorage();
-        } catch (IOException e) {
-            logManager.e(LOG_ERROR_TAG, "从内部assets加载配置文件失败", e);
-            config = new JsonObject(); // 创建空配置，避免空指针异常
-        }
-    }
-}
-
-/**
- * 将内部配置文件复制到外部存储
- */
-private void copyConfigToExternalStorage() {
-    try {
-        File externalConfigFile = new File(getExternalFilesDir(null), CONFIG_FILE);
-        // 如果外部配置文件已存在，不覆盖
-        if (externalConfigFile.exists()) {
-            logManager.d(LOG_INIT, "外部配置文件已存在，不进行复制");
-            return;
-        }
-        
-        logManager.d(LOG_INIT, "将内部配置文件复制到外部存储: " + externalConfigFile.getAbsolutePath());
-        InputStream is = getAssets().open(CONFIG_FILE);
-        FileOutputStream fos = new FileOutputStream(externalConfigFile);
-        
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = is.read(buffer)) > 0) {
-            fos.write(buffer, 0, length);
+            return config.getAsJsonObject(section).get(key).getAsBoolean();
+        } catch (Exception e) {
+            logManager.w(LOG_ERROR_TAG, "获取配置项失败: " + section + "." + key + "，使用默认值: " + defaultValue);
+            return defaultValue;
         }
-        
-        fos.flush();
-        fos.close();
-        is.close();
-        
-        logManager.d(LOG_INIT, "配置文件成功复制到外部存储");
-    } catch (Exception e) {
-        logManager.e(LOG_ERROR_TAG, "复制配置文件到外部存储失败", e);
     }
-}
-
     
     /**
-     * 从配置文件获取字符串值
+     * 从配置文件获取浮点数值
      */
-    private String getConfigString(String section, String key, String defaultValue) {
+    private double getConfigDouble(String section, String key, double defaultValue) {
         try {
-            return config.getAsJsonObject(section).get(key).getAsString();
+            return config.getAsJsonObject(section).get(key).getAsDouble();
         } catch (Exception e) {
             logManager.w(LOG_ERROR_TAG, "获取配置项失败: " + section + "." + key + "，使用默认值: " + defaultValue);
             return defaultValue;
@@ -190,10 +207,323 @@ private void copyConfigToExternalStorage() {
         }
     }
 
+    /**
+     * 任务日志的根目录，MainActivity启动时据此查找未完成的任务
+     */
+    public static File getJournalRoot(Context context) {
+        return new File(context.getFilesDir(), "jobs");
+    }
+
+    /**
+     * 根据配置创建生成引擎，平台相关的部分在这里注入
+     */
+    private GenerationEngine createEngine() {
+        // 受限网络（按流量计费或上行较慢）上使用较小的图片规格，拍照后已在后台准备好的图片直接使用
+        networkGate = AppServices.getInstance(this).getNetworkGate();
+        networkGate.setListener(reason -> notifier.update(reason));
+        PayloadEncoder payloadEncoder = CapturedPayloads.getInstance().wrap(new NetworkAwarePayloadEncoder(
+                AndroidPayloadEncoder.fromConfig(config, base64Codec),
+                AndroidPayloadEncoder.constrainedFromConfig(config, base64Codec),
+                networkGate, logManager), networkGate);
+        // 流式请求边接收边保存，不能同时发出两个相同的请求，不使用对冲
+        boolean streaming = getConfigBoolean("api", "streaming", false);
+        if (streaming) {
+            logManager.d(LOG_INIT, "使用流式端点，不启用对冲请求");
+        }
+        Map<String, Integer> keyWeights = readKeyPool();
+        keyPoolEnabled = !keyWeights.isEmpty();
+        if (keyPoolEnabled) {
+            KEY_POOL.configure(keyWeights);
+            logManager.d(LOG_INIT, "API密钥池已启用，密钥数量: " + keyWeights.size());
+        }
+        // 每个端点各自限流，多个端点时由路由选择最健康的一个
+        List<String> endpoints = readEndpoints();
+        Transport transport;
+        if (endpoints.size() > 1) {
+            endpointRouter = getSharedRouter(endpoints, keyWeights, streaming);
+            transport = endpointRouter;
+        } else {
+            transport = createEndpointTransport(endpoints.get(0), keyWeights, streaming,
+                    okHttpTransports, hedgingTransports);
+        }
+        FileOutputSink.Durability durability = FileOutputSink.Durability.parse(
+                getConfigString("storage", "durability", "fdatasync"), FileOutputSink.Durability.FDATASYNC);
+        OutputSink outputSink = new FileOutputSink(AppServices.getInstance(this).getOutputStorage(), durability, logManager);
+
+        GenerationEngine engine = new GenerationEngine(payloadEncoder, transport, base64Codec, outputSink, logManager, RETRY_DELAY_MILLIS);
+        engine.setSingleFlight(IN_FLIGHT);
+        engine.setMaxCandidates(getConfigInt("api", "candidateCount", 1));
+        engine.setStreaming(streaming);
+        engine.setNetworkGate(networkGate);
+        payloadPrefetcher = new PayloadPrefetcher(payloadEncoder,
+                getConfigInt("pipeline", "prepareThreads", 1),
+                getConfigInt("pipeline", "maxPrepared", 2),
+                logManager);
+        engine.setPrefetcher(payloadPrefetcher);
+        if (responseCache != null) {
+            engine.setResponseCache(responseCache);
+        }
+        return engine;
+    }
+
+    /**
+     * 读取端点列表：api.endpoints不为空时按其中的顺序使用，否则只使用api.endpoint
+     * 每项可以是完整的generateContent地址，也可以是 {"baseUrl": "...", "model": "..."}，
+     * 没有model时使用api.model；baseUrl可以是其他地区的地址或本地代理
+     */
+    private List<String> readEndpoints() {
+        List<String> endpoints = new ArrayList<>();
+        try {
+            JsonObject api = config.getAsJsonObject("api");
+            if (api != null && api.has("endpoints") && api.get("endpoints").isJsonArray()) {
+                String defaultModel = api.has("model") ? api.get("model").getAsString() : null;
+                for (JsonElement element : api.getAsJsonArray("endpoints")) {
+                    String endpoint;
+                    if (element.isJsonObject()) {
+                        JsonObject entry = element.getAsJsonObject();
+                        String model = entry.has("model") ? entry.get("model").getAsString() : defaultModel;
+                        if (entry.has("endpoint")) {
+                            endpoint = entry.get("endpoint").getAsString();
+                        } else if (entry.has("baseUrl") && model != null) {
+                            String baseUrl = entry.get("baseUrl").getAsString();
+                            endpoint = (baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl)
+                                    + "/models/" + model + ":generateContent";
+                        } else {
+                            logManager.w(LOG_ERROR_TAG, "端点配置缺少endpoint或baseUrl/model，忽略: " + entry);
+                            continue;
+                        }
+                    } else {
+                        endpoint = element.getAsString();
+                    }
+                    if (!endpoint.trim().isEmpty() && !endpoints.contains(endpoint.trim())) {
+                        endpoints.add(endpoint.trim());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logManager.w(LOG_ERROR_TAG, "读取api.endpoints失败，只使用api.endpoint: " + e.getMessage());
+            endpoints.clear();
+        }
+        if (endpoints.isEmpty()) {
+            endpoints.add(getConfigString("api", "endpoint", DEFAULT_ENDPOINT));
+        }
+        return endpoints;
+    }
+
+    /**
+     * 取得多端点共用的路由：端点、密钥和各层传输的配置与上次相同时沿用，路由学到的端点健康状态
+     * 不会因为服务重新创建而丢失；配置改变时重新创建，并停止旧路由的对冲请求
+     */
+    private EndpointRouter getSharedRouter(List<String> endpoints, Map<String, Integer> keyWeights, boolean streaming) {
+        String routerConfig = endpoints + "|" + keyWeights + "|" + streaming + "|" + config.get("compression")
+                + "|" + config.get("hedging") + "|" + config.get("rateLimit");
+        synchronized (ROUTER_OK_HTTP_TRANSPORTS) {
+            if (sharedRouter != null && routerConfig.equals(sharedRouterConfig)) {
+                logManager.d(LOG_INIT, "沿用多端点路由，端点健康状态: " + sharedRouter.summary());
+            } else {
+                if (sharedRouter != null) {
+                    logManager.d(LOG_INIT, "端点配置已改变，重新创建多端点路由");
+                }
+                for (HedgingTransport hedgingTransport : ROUTER_HEDGING_TRANSPORTS) {
+                    hedgingTransport.shutdown();
+                }
+                ROUTER_OK_HTTP_TRANSPORTS.clear();
+                ROUTER_HEDGING_TRANSPORTS.clear();
+                List<Transport> targets = new ArrayList<>();
+                for (String url : endpoints) {
+                    targets.add(createEndpointTransport(url, keyWeights, streaming,
+                            ROUTER_OK_HTTP_TRANSPORTS, ROUTER_HEDGING_TRANSPORTS));
+                }
+                sharedRouter = new EndpointRouter(targets, logManager);
+                sharedRouterConfig = routerConfig;
+                logManager.d(LOG_INIT, "多端点路由已启用，端点数量: " + targets.size());
+            }
+            okHttpTransports.addAll(ROUTER_OK_HTTP_TRANSPORTS);
+            return sharedRouter;
+        }
+    }
+
+    /**
+     * 一个端点的传输：发送请求的OkHttpTransport，非流式时加上对冲请求，再按主机或密钥限流
+     * @param createdOkHttp 创建的OkHttpTransport加入这里
+     * @param createdHedging 创建的对冲请求加入这里
+     */
+    private Transport createEndpointTransport(String url, Map<String, Integer> keyWeights, boolean streaming,
+                                              List<OkHttpTransport> createdOkHttp,
+                                              List<HedgingTransport> createdHedging) {
+        OkHttpTransport okHttpTransport = new OkHttpTransport(AppServices.getInstance(this).getHttpClient(), url, logManager);
+        okHttpTransport.setRequestCompression(getConfigBoolean("compression", "gzipRequests", true));
+        createdOkHttp.add(okHttpTransport);
+        Transport transport = streaming ? okHttpTransport : createHedgingTransport(okHttpTransport, createdHedging);
+        return createKeyedTransport(transport, keyWeights);
+    }
+
+    /**
+     * 配置了密钥池时每个密钥各自限流，由KeyPoolTransport分配请求；否则整个主机共用一份限流
+     */
+    private Transport createKeyedTransport(Transport transport, Map<String, Integer> keyWeights) {
+        String host = Uri.parse(transport.getEndpoint()).getHost();
+        if (keyWeights.isEmpty()) {
+            return createThrottledTransport(transport, host, host);
+        }
+        Map<String, Transport> keyTransports = new LinkedHashMap<>();
+        for (String key : keyWeights.keySet()) {
+            keyTransports.put(key, createThrottledTransport(transport, host + "#" + key,
+                    host + "（密钥 " + maskApiKey(key) + "）"));
+        }
+        return new KeyPoolTransport(KEY_POOL, keyTransports, logManager);
+    }
+
+    /**
+     * 读取api.keys：每项可以是密钥字符串，也可以是 {"key": "...", "weight": 2}
+     * @return 密钥到权重，保持配置中的顺序；没有配置时为空
+     */
+    private Map<String, Integer> readKeyPool() {
+        Map<String, Integer> keyWeights = new LinkedHashMap<>();
+        try {
+            JsonObject api = config.getAsJsonObject("api");
+            if (api == null || !api.has("keys") || !api.get("keys").isJsonArray()) {
+                return keyWeights;
+            }
+            for (JsonElement element : api.getAsJsonArray("keys")) {
+                String key;
+                int weight = 1;
+                if (element.isJsonObject()) {
+                    JsonObject entry = element.getAsJsonObject();
+                    key = entry.has("key") ? entry.get("key").getAsString() : "";
+                    weight = entry.has("weight") ? entry.get("weight").getAsInt() : 1;
+                } else {
+                    key = element.getAsString();
+                }
+                key = key.trim();
+                if (key.isEmpty() || key.equals("YOUR_API_KEY_HERE") || weight <= 0) {
+                    continue;
+                }
+                keyWeights.put(key, weight);
+            }
+        } catch (Exception e) {
+            logManager.w(LOG_ERROR_TAG, "读取api.keys失败，不使用密钥池: " + e.getMessage());
+            keyWeights.clear();
+        }
+        return keyWeights;
+    }
+
+    /**
+     * 按配置为请求加上自适应并发限制，requestsPerMinute大于0时再加上令牌桶限流；
+     * 限流键相同（同一主机或同一密钥）的所有任务共用
+     * @param limitKey 限流状态的键
+     * @param label 日志中显示的名称
+     */
+    private Transport createThrottledTransport(Transport transport, String limitKey, String label) {
+        if (!getConfigBoolean("rateLimit", "enabled", true)) {
+            return transport;
+        }
+        int requestsPerMinute = getConfigInt("rateLimit", "requestsPerMinute", 0);
+        int burst = getConfigInt("rateLimit", "burst", 2);
+        if (requestsPerMinute > 0 && burst < 1) {
+            logManager.w(LOG_ERROR_TAG, "rateLimit.burst必须至少为1，按1处理: " + burst);
+            burst = 1;
+        }
+        TokenBucket tokenBucket = null;
+        AdaptiveConcurrencyLimit concurrencyLimit;
+        synchronized (RATE_LIMITS) {
+            if (requestsPerMinute > 0) {
+                tokenBucket = RATE_LIMITS.get(limitKey);
+                if (tokenBucket == null) {
+                    tokenBucket = new TokenBucket(requestsPerMinute, burst);
+                    RATE_LIMITS.put(limitKey, tokenBucket);
+                }
+            }
+            concurrencyLimit = CONCURRENCY_LIMITS.get(limitKey);
+            if (concurrencyLimit == null) {
+                concurrencyLimit = new AdaptiveConcurrencyLimit(
+                        getConfigInt("rateLimit", "initialConcurrency", 2),
+                        getConfigInt("rateLimit", "minConcurrency", 1),
+                        getConfigInt("rateLimit", "maxConcurrency", 4),
+                        getConfigDouble("rateLimit", "latencyTolerance", 2.0),
+                        logManager);
+                CONCURRENCY_LIMITS.put(limitKey, concurrencyLimit);
+            }
+        }
+        logManager.d(LOG_INIT, "客户端限流已启用: " + label + "，当前并发上限: " + concurrencyLimit.getLimit()
+                + (tokenBucket != null ? "，每分钟 " + requestsPerMinute + " 次请求" : "，不限制请求速率"));
+        return new ThrottledTransport(transport, tokenBucket, concurrencyLimit, logManager);
+    }
+
+    /**
+     * 按配置启用对冲请求，放在限流和密钥池之下：延迟样本和对冲计时只包括实际的网络请求，
+     * 不包括本地排队等待令牌或密钥冷却的时间；对冲请求由预算限制数量，不再占用令牌
+     * @param createdHedging 启用时创建的对冲请求加入这里
+     */
+    private Transport createHedgingTransport(Transport transport, List<HedgingTransport> createdHedging) {
+        if (!getConfigBoolean("hedging", "enabled", false)) {
+            return transport;
+        }
+        String host = Uri.parse(transport.getEndpoint()).getHost();
+        LatencyTracker latencyTracker;
+        synchronized (LATENCY_TRACKERS) {
+            latencyTracker = LATENCY_TRACKERS.get(host);
+            if (latencyTracker == null) {
+                latencyTracker = new LatencyTracker(200);
+                LATENCY_TRACKERS.put(host, latencyTracker);
+            }
+        }
+        double percentile = getConfigDouble("hedging", "percentile", 0.9);
+        double budgetRatio = getConfigInt("hedging", "budgetPercent", 10) / 100.0;
+        HedgingTransport hedgingTransport = new HedgingTransport(transport, latencyTracker, percentile, budgetRatio,
+                getConfigInt("hedging", "minSamples", 10), logManager);
+        createdHedging.add(hedgingTransport);
+        logManager.d(LOG_INIT, "对冲请求已启用: " + host + "，延迟分位: p" + Math.round(percentile * 100) + "，预算: " + budgetRatio);
+        return hedgingTransport;
+    }
+
+    @Override
+    public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
+        // 系统重新投递的Intent按恢复任务处理，任务日志已删除时不会重复生成
+        if (intent != null && (flags & START_FLAG_REDELIVERY) != 0) {
+            intent.setAction(ACTION_RESUME_JOB);
+        }
+        prefetchPayload(intent);
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    /**
+     * 新提交的单图任务在排队时就开始准备图片数据，轮到它时不必再等待解码和压缩
+     * 恢复的任务使用任务日志中的数据，批量任务由BatchScheduler自行准备
+     */
+    private void prefetchPayload(@Nullable Intent intent) {
+        if (intent == null || ACTION_RESUME_JOB.equals(intent.getAction())
+                || intent.getStringArrayListExtra(EXTRA_IMAGE_URIS) != null) {
+            return;
+        }
+        String jobId = intent.getStringExtra(EXTRA_JOB_ID);
+        String imageUriStr = intent.getStringExtra("imageUri");
+        if (jobId == null || imageUriStr == null || imageUriStr.trim().isEmpty()) {
+            return;
+        }
+        payloadPrefetcher.submit(jobId, new UriImageSource(getContentResolver(), Uri.parse(imageUriStr)));
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (payloadPrefetcher != null) {
+            payloadPrefetcher.shutdown();
+        }
+        for (HedgingTransport hedgingTransport : hedgingTransports) {
+            hedgingTransport.shutdown();
+        }
+        if (networkGate != null) {
+            networkGate.setListener(null);
+        }
+        logManager.d(LOG_INIT, "服务销毁");
+    }
+
     @Override
     protected void onHandleIntent(@Nullable Intent intent) {
         logManager.d(LOG_INIT, "开始处理任务");
         
+        JobJournal journal = null;
         try {
             if (intent == null) {
                 logManager.e(LOG_ERROR_TAG, "Intent为空，无法处理任务");
@@ -201,32 +531,41 @@ private void copyConfigToExternalStorage() {
                 return;
             }
 
-            // 记录所有参数
-            String apiKey = intent.getStringExtra("apiKey");
-            // 如果配置文件中有API密钥，优先使用配置文件中的
-            String configApiKey = getConfigString("api", "key", "");
-            if (!configApiKey.isEmpty() && !configApiKey.equals("YOUR_API_KEY_HERE")) {
-                apiKey = configApiKey;
-                logManager.d(LOG_PARAMS, "使用配置文件中的API密钥");
+            // 打开任务日志，已有记录时从日志恢复任务参数
+            String jobId = intent.getStringExtra(EXTRA_JOB_ID);
+            if (jobId == null) {
+                jobId = UUID.randomUUID().toString();
             }
-            
-            String apiKeyMasked = apiKey != null ? apiKey.substring(0, Math.min(4, apiKey.length())) + "..." + 
-                                 apiKey.substring(Math.max(0, apiKey.length() - 4)) : "null";
-            String imageUriStr = intent.getStringExtra("imageUri");
-            String scene = intent.getStringExtra("scene");
-            int numOutputs = intent.getIntExtra("numOutputs", 1);
-            int maxRetries = intent.getIntExtra("maxRetries", 3);
-            String lolication = intent.getStringExtra("lolication");
-            String pos = intent.getStringExtra("pos");
+            ArrayList<String> imageUris = intent.getStringArrayListExtra(EXTRA_IMAGE_URIS);
+            if (imageUris != null && imageUris.size() > 1) {
+                handleBatch(jobId, intent, imageUris);
+                return;
+            }
+            journal = JobJournal.open(getJournalRoot(this), jobId, logManager);
+            GenerationJob job;
+            if (journal.exists()) {
+                job = GenerationJob.fromJson(journal.getParams());
+                logManager.i(LOG_INIT, "从任务日志恢复任务: " + jobId);
+            } else if (ACTION_RESUME_JOB.equals(intent.getAction())) {
+                logManager.d(LOG_INIT, "任务已完成，无需恢复: " + jobId);
+                journal = null;
+                return;
+            } else {
+                job = readJob(jobId, intent.getStringExtra("imageUri"), buildPrompt(intent), intent);
+                journal.writeParams(job.toJson());
+            }
+
+            String apiKey = resolveApiKey(job.getApiKey());
+            String apiKeyMasked = maskApiKey(apiKey);
+            String imageUriStr = job.getImageUri();
 
             logManager.d(LOG_PARAMS, "参数接收完成：" +
+                    "\n - 任务ID: " + jobId +
                     "\n - API密钥: " + apiKeyMasked +
                     "\n - 图片URI: " + imageUriStr +
-                    "\n - 场景: " + scene +
-                    "\n - 生成数量: " + numOutputs +
-                    "\n - 最大重试次数: " + maxRetries +
-                    "\n - 胸部描述: " + (lolication == null || lolication.isEmpty() ? "无" : lolication) +
-                    "\n - 姿态描述: " + pos);
+                    "\n - 生成数量: " + job.getNumOutputs() +
+                    "\n - 最大重试次数: " + job.getMaxRetries() +
+                    "\n - 提示词长度: " + (job.getPrompt() == null ? 0 : job.getPrompt().length()) + "字符");
 
             // 验证必要参数
             if (apiKey == null || apiKey.trim().isEmpty()) {
@@ -241,38 +580,42 @@ private void copyConfigToExternalStorage() {
                 return;
             }
 
-            Uri imageUri = Uri.parse(imageUriStr);
-            
             // 更新通知
-            updateNotification("正在处理图片...");
-            logManager.d(LOG_IMAGE, "开始处理输入图片");
+            notifier.update("正在处理图片...");
             
-            // 读取图片
-            Bitmap bitmap = getBitmapFromUri(imageUri);
-            if (bitmap == null) {
+            // 读取图片并准备请求数据，任务日志中已有时直接复用
+            PreparedImage image = engine.prepare(journal, new UriImageSource(getContentResolver(), Uri.parse(imageUriStr)));
+            if (image == null) {
                 logManager.e(LOG_ERROR_TAG, "无法读取图片: " + imageUriStr);
                 showToast("无法读取选择的图片，请重新选择");
                 return;
             }
-            logManager.d(LOG_IMAGE, "图片读取成功，尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight());
-            
-            // 构建提示词
-            // 构建提示词
-            String bodyInfo = (lolication == null || lolication.isEmpty()) ? "除了胸部外" : "";
-            // 从配置文件获取提示词模板
-            String promptTemplate = getConfigString("prompts", "default", "");
-            String prompt = buildPrompt(promptTemplate, scene, lolication == null ? "" : lolication, bodyInfo, pos == null ? "" : pos);
-            logManager.d(LOG_PARAMS, "提示词构建完成，长度: " + prompt.length() + "字符");
             
             // 更新通知
-            updateNotification("正在生成图片...");
-            
-            // 生成图片
-            logManager.d(LOG_API, "开始生成图片，数量: " + numOutputs + "，最大重试次数: " + maxRetries);
-            List<String> generatedImagePaths = generateImages(apiKey, bitmap, prompt, numOutputs, maxRetries);
+            notifier.update("正在生成图片...");
             
+            GenerationResult result = engine.run(job, apiKey, journal, image, new GenerationEngine.Listener() {
+                @Override
+                public void onStart(int total, int completed) {
+                    notifier.startJob(total, completed);
+                }
+
+                @Override
+                public void onAttempt(int index, int attempt, int maxRetries) {
+                    StartupMetrics.onFirstRequest();
+                    notifier.update("正在生成第 " + (index + 1) + " 张图片，尝试 " + (attempt + 1) + "/" + maxRetries);
+                }
+
+                @Override
+                public void onOutput(int index, String path) {
+                    notifier.addCompleted(1);
+                }
+            });
+            // 合并到其他任务时同样展示共享的图片
+            List<String> generatedImagePaths = result.getImagePaths();
             if (generatedImagePaths.isEmpty()) {
                 logManager.e(LOG_ERROR_TAG, "没有成功生成任何图片");
+                notifier.finishJob(getString(R.string.generation_failed));
                 showToast(getString(R.string.generation_failed));
                 return;
             }
@@ -283,7 +626,7 @@ private void copyConfigToExternalStorage() {
             }
             
             // 更新通知
-            updateNotification("图片生成完成");
+            notifier.finishJob("图片生成完成");
             
             // 启动结果页面
             Intent resultIntent = new Intent(this, ResultActivity.class);
@@ -297,386 +640,213 @@ private void copyConfigToExternalStorage() {
         } catch (Exception e) {
             logManager.e(LOG_ERROR_TAG, "处理任务时出错", e);
             showToast("生成图片时出错: " + e.getMessage());
-            updateNotification("生成失败: " + e.getMessage());
-        }
-    }
-
-/**
- * 构建提示词
- * @param promptTemplate 提示词模板
- * @param scene 场景
- * @param lolication 胸部描述
- * @param bodyInfo 身体信息
- * @param pos 姿势
- * @return 构建好的提示词
- */
-private String buildPrompt(String promptTemplate, String scene, String lolication, String bodyInfo, String pos) {
-    logManager.d(LOG_PARAMS, "构建提示词，参数：scene=" + scene + ", lolication=" + lolication + ", bodyInfo=" + bodyInfo + ", pos=" + pos);
-    
-    // 如果配置文件中没有提示词模板，使用默认模板
-    if (promptTemplate == null || promptTemplate.isEmpty()) {
-        promptTemplate = "一张顶级专业cosplay摄影作品。主角是一位顶尖的中国女coser，她拥有姣好的面郎，化着淡妆，挺翘的鼻子，美瞳，化妆，白皮肤，{lolication}，光滑细腻的肌肤，情趣吊带袜，情趣蕾丝胸罩。她通过极其精致的妆容和神态表演，完美还原了图片主体的气质、发型和标志性表情。身材和图片一致。{bodyInfo}。头发发质自然。她完整地穿着图片中的服装。{pos}。服装材质表现出极高的真实感，有清晰的布料纹理、皮革光泽、丝袜质感和自然褶皱。年龄一致。\n完全重塑图片光影及质感。场景位于{scene}中。明亮丰富打光，光照细节丰富。\n最终画面要求顶级相机拍摄，RAW照片质感，皮肤纹理真实细腻，光影层次丰富。\n绝对禁止出现任何二次元、卡通、3D模型或绘画元素，确保最终结果是100%逼真的真人摄影作品，尤其是面部一定是真人的面部，禁止出现任何二次元、卡通、3D模型或绘画元素面部。\n生成时请思考画面是否真实？生成的coser是否和真人一样？如果不一样应该怎么办？";
-    }
-    
-    // 替换模板中的占位符
-    String prompt = promptTemplate
-            .replace("{scene}", scene)
-            .replace("{lolication}", lolication)
-            .replace("{bodyInfo}", bodyInfo)
-            .replace("{pos}", pos);
-    
-    logManager.d(LOG_PARAMS, "提示词构建完成，长度：" + prompt.length() + "字符");
-    return prompt;
-}
-
-// 5. 修改后的getBitmapFromUri方法
-private Bitmap getBitmapFromUri(Uri uri) {
-    InputStream inputStream = null;
-    try {
-        logManager.d(LOG_IMAGE, "从URI读取图片: " + uri);
-        inputStream = getContentResolver().openInputStream(uri);
-        if (inputStream == null) {
-            logManager.e(LOG_ERROR_TAG, "无法打开输入流");
-            return null;
-        }
-        
-        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-        if (bitmap != null) {
-            logManager.d(LOG_IMAGE, "图片读取成功，尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight() + ", 格式: ARGB_8888");
-            
-            // 从配置文件获取最大尺寸
-            int maxSize = getConfigInt("image", "maxSize", 2048);
-            
-            // 如果图片过大，进行压缩
-            if (bitmap.getWidth() > maxSize || bitmap.getHeight() > maxSize) {
-                logManager.d(LOG_IMAGE, "图片过大，正在压缩...");
-                bitmap = scaleBitmap(bitmap, maxSize);
-                logManager.d(LOG_IMAGE, "图片压缩完成，新尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            notifier.finishJob("生成失败: " + e.getMessage());
+        } finally {
+            // 任务正常结束（无论成功与否）时删除日志，只有进程被杀死时才会保留
+            if (journal != null) {
+                payloadPrefetcher.discard(journal.getJobId());
+                journal.finish();
             }
-            
-        } else {
-            logManager.e(LOG_ERROR_TAG, "图片解码失败，返回null");
-        }
-        return bitmap;
-    } catch (Exception e) {
-        logManager.e(LOG_ERROR_TAG, "读取图片时出错: " + e.getMessage(), e);
-        return null;
-    } finally {
-        if (inputStream != null) {
-            try {
-                inputStream.close();
-            } catch (Exception e) {
-                logManager.w(LOG_ERROR_TAG, "关闭输入流时出错: " + e.getMessage());
+            for (OkHttpTransport okHttpTransport : okHttpTransports) {
+                logManager.d(LOG_API, "传输统计（" + Uri.parse(okHttpTransport.getEndpoint()).getHost() + "）: "
+                        + okHttpTransport.getStats().summary());
+            }
+            if (endpointRouter != null) {
+                logManager.d(LOG_API, "端点健康状态: " + endpointRouter.summary());
+            }
+            if (keyPoolEnabled) {
+                logManager.d(LOG_API, "API密钥使用统计: " + KEY_POOL.summary());
             }
         }
     }
-}
-    private Bitmap scaleBitmap(Bitmap bitmap, int maxSize) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        
-        float scale = Math.min((float) maxSize / width, (float) maxSize / height);
-        
-        int newWidth = Math.round(width * scale);
-        int newHeight = Math.round(height * scale);
-        
-        return Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
-    }
 
-    private List<String> generateImages(String apiKey, Bitmap bitmap, String prompt, int numOutputs, int maxRetries) {
-        List<String> savedImagePaths = new ArrayList<>();
-        
-        // 将图片转换为Base64
-        logManager.d(LOG_IMAGE, "开始将图片转换为Base64");
-        String base64Image = bitmapToBase64(bitmap);
-        if (base64Image == null) {
-            logManager.e(LOG_ERROR_TAG, "图片转换为Base64失败");
-            return savedImagePaths;
-        }
-        logManager.d(LOG_IMAGE, "图片成功转换为Base64，长度: " + base64Image.length() + "字符");
-        
-        for (int i = 0; i < numOutputs; i++) {
-            boolean success = false;
-            
-            logManager.d(LOG_API, "开始生成第 " + (i + 1) + "/" + numOutputs + " 张图片");
-            
-            for (int attempt = 0; attempt < maxRetries && !success; attempt++) {
-                try {
-                    logManager.d(LOG_API, "第 " + (i + 1) + " 张图片，尝试 " + (attempt + 1) + "/" + maxRetries);
-                    updateNotification("正在生成第 " + (i + 1) + " 张图片，尝试 " + (attempt + 1) + "/" + maxRetries);
-                    
-                    String imagePath = callGeminiApi(apiKey, base64Image, prompt);
-                    if (imagePath != null) {
-                        savedImagePaths.add(imagePath);
-                        success = true;
-                        logManager.d(LOG_API, "第 " + (i + 1) + " 张图片生成成功，路径: " + imagePath);
-                    } else {
-                        logManager.w(LOG_API, "第 " + (i + 1) + " 张图片，尝试 " + (attempt + 1) + " 失败，等待2秒后重试");
-                        // 等待2秒后重试
-                        Thread.sleep(2000);
-                    }
-                } catch (Exception e) {
-                    logManager.e(LOG_ERROR_TAG, "第 " + (i + 1) + " 张图片，尝试 " + (attempt + 1) + " 出错: " + e.getMessage(), e);
-                    try {
-                        // 等待2秒后重试
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        logManager.w(LOG_ERROR_TAG, "线程中断");
-                    }
+    /**
+     * 批量任务：每张原图作为一个子任务，分别记录任务日志
+     * 所有子任务的日志在开始前一次写好，进程被杀死后已完成的子任务不会重复生成
+     */
+    private void handleBatch(String jobId, Intent intent, List<String> imageUris) throws InterruptedException, IOException {
+        boolean resume = ACTION_RESUME_JOB.equals(intent.getAction());
+        String prompt = null;
+        List<BatchScheduler.Item> items = new ArrayList<>();
+        List<JobJournal> journals = new ArrayList<>();
+        int totalOutputs = 0;
+        for (int i = 0; i < imageUris.size(); i++) {
+            String itemJobId = jobId + "-" + (i + 1);
+            JobJournal journal = JobJournal.open(getJournalRoot(this), itemJobId, logManager);
+            GenerationJob job;
+            if (journal.exists()) {
+                job = GenerationJob.fromJson(journal.getParams());
+            } else if (resume) {
+                continue;
+            } else {
+                if (prompt == null) {
+                    prompt = buildPrompt(intent);
                 }
+                job = readJob(itemJobId, imageUris.get(i), prompt, intent);
+                journal.writeParams(job.toJson());
             }
-            
-            if (!success) {
-                logManager.e(LOG_ERROR_TAG, "第 " + (i + 1) + " 张图片在 " + maxRetries + " 次尝试后仍然失败");
-            }
+            journals.add(journal);
+            items.add(new BatchScheduler.Item(job, journal, new UriImageSource(getContentResolver(), Uri.parse(job.getImageUri()))));
+            totalOutputs += job.getNumOutputs();
         }
-        
-        logManager.d(LOG_PROCESS, "图片生成完成，共生成 " + savedImagePaths.size() + "/" + numOutputs + " 张图片");
-        return savedImagePaths;
-    }
-
-
-private String callGeminiApi(String apiKey, String base64Image, String prompt) {
-    Response response = null;
-    try {
-        // 从配置文件获取API端点和模型
-        String url = getConfigString("api", "endpoint", "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash-image-preview:generateContent");
-        String model = getConfigString("api", "model", "gemini-2.5-flash-image-preview");
-        
-        logManager.d(LOG_API, "准备调用Gemini API: " + url);
-        logManager.d(LOG_API, "使用模型: " + model);
-
-        // 构建请求体
-        JsonObject requestBody = new JsonObject();
-        JsonArray contents = new JsonArray();
-        JsonObject content = new JsonObject();
-        JsonArray parts = new JsonArray();
-
-        // 文本部分
-        JsonObject textPart = new JsonObject();
-        textPart.addProperty("text", prompt);
-        parts.add(textPart);
-
-        // 图片部分
-        JsonObject imagePart = new JsonObject();
-        JsonObject imageData = new JsonObject();
-        imageData.addProperty("mime_type", "image/jpeg"); // 或 "image/png"，要和 base64 对应
-        imageData.addProperty("data", base64Image);
-        imagePart.add("inline_data", imageData); 
-        parts.add(imagePart);
-
-        // 封装 parts -> contents
-        content.add("parts", parts);
-        contents.add(content);
-        requestBody.add("contents", contents);
-
-        // 请求体
-        MediaType JSON = MediaType.get("application/json; charset=utf-8");
-        RequestBody body = RequestBody.create(JSON, gson.toJson(requestBody));
-
-        // 正确构建请求：注意这里 API key 是拼在 URL 上的
-        Request request = new Request.Builder()
-                .url(url)
-                .post(body)
-                .addHeader("x-goog-api-key", apiKey) // 使用正确的Header
-                .addHeader("Content-Type", "application/json")
-                .addHeader("User-Agent", "GeminiImageApp/1.0")
-                .build();
-
-        logManager.d(LOG_API, "发送API请求");
-        long startTime = System.currentTimeMillis();
-
-        response = client.newCall(request).execute();
-
-        long endTime = System.currentTimeMillis();
-        logManager.d(LOG_API, "API请求完成，耗时: " + (endTime - startTime) + "ms，状态码: " + response.code());
-
-        if (!response.isSuccessful()) {
-            String errorBody = response.body() != null ? response.body().string() : "No error body";
-            logManager.e(LOG_ERROR_TAG, "API请求失败: " + response.code() + " " + response.message() + ", 错误详情: " + errorBody);
-            return null;
-        }
-
-        String responseBody = response.body().string();
-        logManager.d(LOG_API, "API响应接收完成，响应体长度: " + responseBody.length() + "字符");
-
-        return processGeminiResponse(responseBody);
-
-    } catch (Exception e) {
-        logManager.e(LOG_ERROR_TAG, "调用Gemini API时出错: " + e.getMessage(), e);
-        return null;
-    } finally {
-        if (response != null) {
-            response.close();
+        if (items.isEmpty()) {
+            logManager.d(LOG_INIT, "批量任务已完成，无需恢复: " + jobId);
+            return;
         }
-    }
-}
 
-
-    private String processGeminiResponse(String responseJson) {
-        try {
-            logManager.d(LOG_PROCESS, "开始处理API响应");
-            JsonObject jsonResponse = gson.fromJson(responseJson, JsonObject.class);
-            
-            if (!jsonResponse.has("candidates") || jsonResponse.getAsJsonArray("candidates").size() == 0) {
-                logManager.e(LOG_ERROR_TAG, "API响应中没有candidates字段");
-                logManager.d(LOG_ERROR_TAG, "响应内容: " + responseJson.substring(0, Math.min(500, responseJson.length())));
-                return null;
-            }
-            
-            JsonObject candidate = jsonResponse.getAsJsonArray("candidates").get(0).getAsJsonObject();
-            if (!candidate.has("content")) {
-                logManager.e(LOG_ERROR_TAG, "API响应中candidate没有content字段");
-                return null;
-            }
-            
-            JsonObject content = candidate.getAsJsonObject("content");
-            if (!content.has("parts") || content.getAsJsonArray("parts").size() == 0) {
-                logManager.e(LOG_ERROR_TAG, "API响应中content没有parts字段或parts为空");
-                return null;
+        String apiKey = resolveApiKey(items.get(0).getJob().getApiKey());
+        logManager.d(LOG_PARAMS, "批量任务参数：" +
+                "\n - 任务ID: " + jobId +
+                "\n - API密钥: " + maskApiKey(apiKey) +
+                "\n - 原图数量: " + items.size() + (resume ? "（恢复）" : "") +
+                "\n - 生成总数: " + totalOutputs);
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            logManager.e(LOG_ERROR_TAG, "API密钥为空");
+            showToast("API密钥不能为空");
+            for (JobJournal journal : journals) {
+                journal.finish();
             }
-            
-            // 查找包含图像数据的部分
-            logManager.d(LOG_PROCESS, "查找API响应中的图像数据");
-            for (JsonElement partElement : content.getAsJsonArray("parts")) {
-                JsonObject part = partElement.getAsJsonObject();
-                if (part.has("inlineData")) {
-                    JsonObject inlineData = part.getAsJsonObject("inlineData");
-                    String base64Data = inlineData.get("data").getAsString();
-                    logManager.d(LOG_PROCESS, "找到图像数据，Base64长度: " + base64Data.length() + "字符");
-                    
-                    // 保存图像
-                    return saveGeneratedImage(base64Data);
-                }
-            }
-            
-            logManager.e(LOG_ERROR_TAG, "API响应中没有找到图像数据");
-            return null;
-            
-        } catch (Exception e) {
-            logManager.e(LOG_ERROR_TAG, "处理API响应时出错: " + e.getMessage(), e);
-            return null;
+            return;
         }
-    }
 
-    private String saveGeneratedImage(String base64Data) {
-        FileOutputStream fos = null;
-        try {
-            logManager.d(LOG_IMAGE, "开始保存生成的图片");
-            // 解码Base64数据
-            byte[] imageData = Base64.decode(base64Data, Base64.DEFAULT);
-            logManager.d(LOG_IMAGE, "Base64解码完成，图像数据大小: " + imageData.length + "字节");
-            
-            // 创建保存目录
-            File storageDir = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "GeminiGenerated");
-            if (!storageDir.exists()) {
-                boolean created = storageDir.mkdirs();
-                logManager.d(LOG_IMAGE, "创建存储目录: " + storageDir.getAbsolutePath() + ", 结果: " + (created ? "成功" : "失败"));
-                if (!created) {
-                    logManager.e(LOG_ERROR_TAG, "无法创建存储目录");
-                    return null;
-                }
-            } else {
-                logManager.d(LOG_IMAGE, "存储目录已存在: " + storageDir.getAbsolutePath());
+        final int itemCount = items.size();
+        notifier.startJob(totalOutputs, 0);
+        BatchScheduler scheduler = new BatchScheduler(engine,
+                getConfigInt("batch", "prepareThreads", 2),
+                getConfigInt("batch", "maxConcurrentRequests", 2),
+                logManager);
+        List<GenerationResult> results = scheduler.run(items, apiKey, new BatchScheduler.Listener() {
+            @Override
+            public void onItemPreparing(int index) {
+                notifier.update("正在处理第 " + (index + 1) + "/" + itemCount + " 张原图...");
             }
-            
-            // 创建文件
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "GEN_" + timeStamp + "_" + System.currentTimeMillis() + ".png";
-            File imageFile = new File(storageDir, fileName);
-            logManager.d(LOG_IMAGE, "创建图像文件: " + imageFile.getAbsolutePath());
-            
-            // 写入文件
-            fos = new FileOutputStream(imageFile);
-            fos.write(imageData);
-            fos.flush();
-            logManager.d(LOG_IMAGE, "图像数据写入文件成功");
-            
-            logManager.d(LOG_IMAGE, "图片保存完成: " + imageFile.getAbsolutePath());
-            return imageFile.getAbsolutePath();
-            
-        } catch (Exception e) {
-            logManager.e(LOG_ERROR_TAG, "保存生成的图片时出错: " + e.getMessage(), e);
-            return null;
-        } finally {
-            if (fos != null) {
-                try {
-                    fos.close();
-                } catch (Exception e) {
-                    logManager.w(LOG_ERROR_TAG, "关闭文件流时出错: " + e.getMessage());
+
+            @Override
+            public void onItemStart(int index, int total, int completed) {
+                if (completed > 0) {
+                    notifier.addCompleted(completed);
                 }
             }
-        }
-    }
 
-private String bitmapToBase64(Bitmap bitmap) {
-    ByteArrayOutputStream baos = null;
-    try {
-        logManager.d(LOG_IMAGE, "开始将Bitmap转换为Base64");
-        baos = new ByteArrayOutputStream();
-        
-        // 从配置文件获取JPEG质量
-        int jpegQuality = getConfigInt("image", "jpegQuality", 90);
-        
-        bitmap.compress(Bitmap.CompressFormat.JPEG, jpegQuality, baos);
-        byte[] byteArray = baos.toByteArray();
-        logManager.d(LOG_IMAGE, "Bitmap压缩完成，JPEG质量: " + jpegQuality + "%, 大小: " + byteArray.length + "字节");
+            @Override
+            public void onItemAttempt(int index, int outputIndex, int attempt, int maxRetries) {
+                StartupMetrics.onFirstRequest();
+                notifier.update("第 " + (index + 1) + "/" + itemCount + " 张原图：正在生成第 " + (outputIndex + 1)
+                        + " 张图片，尝试 " + (attempt + 1) + "/" + maxRetries);
+            }
 
-        // 【修正】使用 NO_WRAP 标志，确保Base64字符串是单行连续的
-        String base64String = Base64.encodeToString(byteArray, Base64.NO_WRAP);
-        
-        logManager.d(LOG_IMAGE, "Base64编码完成，长度: " + base64String.length() + "字符");
-        return base64String;
-    } catch (Exception e) {
-        logManager.e(LOG_ERROR_TAG, "将Bitmap转换为Base64时出错: " + e.getMessage(), e);
-        return null;
-    } finally {
-        if (baos != null) {
-            try {
-                baos.close();
-            } catch (Exception e) {
-                logManager.w(LOG_ERROR_TAG, "关闭ByteArrayOutputStream时出错: " + e.getMessage());
+            @Override
+            public void onItemOutput(int index, int outputIndex, String path) {
+                notifier.addCompleted(1);
             }
+
+            @Override
+            public void onItemFinished(int index, GenerationResult result) {
+                logManager.i(LOG_PROCESS, "第 " + (index + 1) + "/" + itemCount + " 张原图完成，生成 "
+                        + result.getImagePaths().size() + " 张图片");
+            }
+        });
+
+        // 批量中相同的原图会合并为一次生成，结果只展示一次
+        Set<String> generatedImagePaths = new LinkedHashSet<>();
+        for (GenerationResult result : results) {
+            generatedImagePaths.addAll(result.getImagePaths());
+        }
+        if (generatedImagePaths.isEmpty()) {
+            logManager.e(LOG_ERROR_TAG, "批量任务没有成功生成任何图片");
+            notifier.finishJob(getString(R.string.generation_failed));
+            showToast(getString(R.string.generation_failed));
+            return;
         }
+
+        logManager.d(LOG_PROCESS, "批量任务成功生成 " + generatedImagePaths.size() + " 张图片");
+        notifier.finishJob("图片生成完成");
+
+        Intent resultIntent = new Intent(this, ResultActivity.class);
+        resultIntent.putStringArrayListExtra("imagePaths", new ArrayList<>(generatedImagePaths));
+        resultIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(resultIntent);
+        showToast(getString(R.string.generation_success));
     }
-}
 
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            logManager.d(LOG_INIT, "创建通知渠道");
-            NotificationChannel channel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "Gemini Image Generation",
-                    NotificationManager.IMPORTANCE_LOW);
-            
-            NotificationManager notificationManager = getSystemService(NotificationManager.class);
-            notificationManager.createNotificationChannel(channel);
-            logManager.d(LOG_INIT, "通知渠道创建完成: " + CHANNEL_ID);
+    /**
+     * 如果配置文件中有API密钥，优先使用配置文件中的
+     * 启用密钥池时实际使用的密钥由密钥池按请求选择，这里只返回池中的第一个用于参数检查和日志
+     * 任务日志中不保存密钥，恢复的任务使用界面中保存的密钥
+     */
+    private String resolveApiKey(String apiKey) {
+        if (keyPoolEnabled) {
+            logManager.d(LOG_PARAMS, "使用配置文件中的API密钥池，共 " + KEY_POOL.size() + " 个密钥");
+            return KEY_POOL.getKeys().get(0);
+        }
+        String configApiKey = getConfigString("api", "key", "");
+        if (!configApiKey.isEmpty() && !configApiKey.equals("YOUR_API_KEY_HERE")) {
+            logManager.d(LOG_PARAMS, "使用配置文件中的API密钥");
+            return configApiKey;
         }
+        if (apiKey == null || apiKey.isEmpty()) {
+            logManager.d(LOG_PARAMS, "任务参数中没有API密钥，使用界面中保存的密钥");
+            return getSharedPreferences(AppServices.PREFS_NAME, MODE_PRIVATE).getString("apiKey", "");
+        }
+        return apiKey;
     }
 
-    private Notification createNotification(String message) {
-        logManager.d(LOG_INIT, "创建通知: " + message);
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-        
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Gemini图像生成器")
-                .setContentText(message)
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setContentIntent(pendingIntent)
-                .build();
+    private static String maskApiKey(String apiKey) {
+        return apiKey != null ? apiKey.substring(0, Math.min(4, apiKey.length())) + "..." +
+                apiKey.substring(Math.max(0, apiKey.length() - 4)) : "null";
     }
 
-    private void updateNotification(String message) {
-        logManager.d(LOG_INIT, "更新通知: " + message);
-        Notification notification = createNotification(message);
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+    /**
+     * 从Intent读取任务参数，恢复任务时直接使用日志中的提示词
+     */
+    private GenerationJob readJob(String jobId, String imageUri, String prompt, Intent intent) {
+        return new GenerationJob(jobId,
+                intent.getStringExtra("apiKey"),
+                imageUri,
+                prompt,
+                intent.getIntExtra("numOutputs", 1),
+                intent.getIntExtra("maxRetries", 3),
+                intent.getBooleanExtra("bypassCache", false));
     }
 
+    /**
+     * 根据Intent中的场景、胸部和姿态描述构建提示词
+     */
+    private String buildPrompt(Intent intent) {
+        String scene = intent.getStringExtra("scene");
+        String lolication = intent.getStringExtra("lolication");
+        String pos = intent.getStringExtra("pos");
+        logManager.d(LOG_PARAMS, "任务参数：" +
+                "\n - 场景: " + scene +
+                "\n - 胸部描述: " + (lolication == null || lolication.isEmpty() ? "无" : lolication) +
+                "\n - 姿态描述: " + pos);
+
+        // 构建提示词
+        String bodyInfo = (lolication == null || lolication.isEmpty()) ? "除了胸部外" : "";
+        // 从配置文件获取已编译的提示词模板
+        PromptTemplate promptTemplate = PromptBuilder.select(AppServices.getInstance(this).getPromptTemplates(),
+                intent.getStringExtra(EXTRA_PROMPT_TEMPLATE));
+        return buildPrompt(promptTemplate, scene, lolication == null ? "" : lolication, bodyInfo, pos == null ? "" : pos);
+    }
+
+/**
+ * 构建提示词
+ * @param promptTemplate 提示词模板
+ * @param scene 场景
+ * @param lolication 胸部描述
+ * @param bodyInfo 身体信息
+ * @param pos 姿势
+ * @return 构建好的提示词
+ */
+private String buildPrompt(PromptTemplate promptTemplate, String scene, String lolication, String bodyInfo, String pos) {
+    logManager.d(LOG_PARAMS, "构建提示词，模板：" + promptTemplate.getName() + "，参数：scene=" + scene + ", lolication=" + lolication + ", bodyInfo=" + bodyInfo + ", pos=" + pos);
+    
+    String prompt = PromptBuilder.render(promptTemplate, scene, lolication, bodyInfo, pos);
+    
+    logManager.d(LOG_PARAMS, "提示词构建完成，长度：" + prompt.length() + "字符");
+    return prompt;
+}
+
     private void showToast(final String message) {
         logManager.d(LOG_INIT, "显示Toast: " + message);
         mainHandler.post(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show());
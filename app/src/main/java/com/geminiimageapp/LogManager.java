@@ -2,24 +2,29 @@ package com.geminiimageapp;
 
 import android.util.Log;
 
+import com.geminiimageapp.engine.EngineLog;
+import com.geminiimageapp.engine.LogBuffer;
+
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 日志管理器，用于收集和管理应用内的日志
  */
-public class LogManager {
+public class LogManager implements EngineLog {
     private static final String TAG = "GeminiImageGen";
     
     // 单例实例
     private static LogManager instance;
     
-    // 日志条目列表，使用线程安全的集合
-    private final CopyOnWriteArrayList<LogEntry> logs = new CopyOnWriteArrayList<>();
+    // 最大日志条数
+    private static final int MAX_LOG_ENTRIES = 1000;
+    
+    // 日志条目列表，线程安全，超过最大条数时移除最旧的日志
+    private final LogBuffer<LogEntry> logs = new LogBuffer<>(MAX_LOG_ENTRIES);
     
     // 日志监听器列表
     private final List<LogListener> listeners = new ArrayList<>();
@@ -30,16 +35,7 @@ public class LogManager {
     public static final int LOG_WARNING = 2;
     public static final int LOG_ERROR = 3;
     
-    // 日志标记前缀
-    public static final String LOG_INIT = "【初始化】";
-    public static final String LOG_PARAMS = "【参数处理】";
-    public static final String LOG_API = "【API调用】";
-    public static final String LOG_PROCESS = "【响应处理】";
-    public static final String LOG_IMAGE = "【图片处理】";
-    public static final String LOG_ERROR_TAG = "【错误处理】";
-    
-    // 最大日志条数
-    private static final int MAX_LOG_ENTRIES = 1000;
+    // 日志标记前缀见EngineLog，引擎和界面共用
     
     private LogManager() {
         // 私有构造函数
@@ -74,6 +70,7 @@ public class LogManager {
     /**
      * 添加信息日志
      */
+    @Override
     public void i(String tag, String message) {
         addLog(LOG_INFO, tag, message);
         Log.i(TAG, message);
@@ -82,6 +79,7 @@ public class LogManager {
     /**
      * 添加调试日志
      */
+    @Override
     public void d(String tag, String message) {
         addLog(LOG_DEBUG, tag, message);
         Log.d(TAG, message);
@@ -90,6 +88,7 @@ public class LogManager {
     /**
      * 添加警告日志
      */
+    @Override
     public void w(String tag, String message) {
         addLog(LOG_WARNING, tag, message);
         Log.w(TAG, message);
@@ -98,6 +97,7 @@ public class LogManager {
     /**
      * 添加错误日志
      */
+    @Override
     public void e(String tag, String message, Throwable throwable) {
         addLog(LOG_ERROR, tag, message + (throwable != null ? ": " + throwable.getMessage() : ""));
         Log.e(TAG, message, throwable);
@@ -106,6 +106,7 @@ public class LogManager {
     /**
      * 添加错误日志（无异常）
      */
+    @Override
     public void e(String tag, String message) {
         e(tag, message, null);
     }
@@ -120,11 +121,6 @@ public class LogManager {
         // 添加到日志列表
         logs.add(entry);
         
-        // 如果日志数量超过最大值，移除最旧的日志
-        if (logs.size() > MAX_LOG_ENTRIES) {
-            logs.remove(0);
-        }
-        
         // 通知所有监听器
         notifyListeners(entry);
     }
@@ -142,7 +138,7 @@ public class LogManager {
      * 获取所有日志
      */
     public List<LogEntry> getLogs() {
-        return new ArrayList<>(logs);
+        return logs.snapshot();
     }
     
     /**
@@ -11,6 +11,8 @@ import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.List;
+
 /**
  * 自定义日志显示视图
  */
@@ -58,8 +60,15 @@ public class LogView extends FrameLayout implements LogManager.LogListener {
         logManager = LogManager.getInstance();
         logManager.addListener(this);
         
-        // 加载现有日志
-        adapter.setLogs(logManager.getLogs());
+        // 加载现有日志：快照立即获取，填充列表推迟到首帧之后，不拖慢Activity启动
+        // 之后的新日志也通过post()添加，排在快照之后，不会重复
+        final List<LogManager.LogEntry> existingLogs = logManager.getLogs();
+        post(() -> {
+            adapter.setLogs(existingLogs);
+            if (adapter.getItemCount() > 0) {
+                rvLogs.scrollToPosition(adapter.getItemCount() - 1);
+            }
+        });
     }
     
     @Override
@@ -1,6 +1,7 @@
 package com.geminiimageapp;
 
 import android.Manifest;
+import android.content.ClipData;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
@@ -11,7 +12,9 @@ import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.Toast;
@@ -22,6 +25,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.FileProvider;
 
 import com.bumptech.glide.Glide;
+import com.geminiimageapp.engine.JobJournal;
 import com.google.android.material.textfield.TextInputEditText;
 import com.karumi.dexter.Dexter;
 import com.karumi.dexter.MultiplePermissionsReport;
@@ -36,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity implements LogManager.LogListener {
 
@@ -44,6 +49,7 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
     private TextInputEditText apiKeyInput, sceneInput, numOutputsInput, maxRetriesInput, lolicationInput, posInput;
     private ImageView selectedImageView;
     private Button selectImageButton, takePhotoButton, generateButton;
+    private CheckBox bypassCacheCheckBox;
     private ProgressBar progressBar;
     private LogView logView;
     
@@ -51,6 +57,8 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
     private LogManager logManager;
 
     private Uri selectedImageUri;
+    // 相册中选择的全部图片，多于一张时按批量任务提交
+    private final ArrayList<Uri> selectedImageUris = new ArrayList<>();
     private String currentPhotoPath;
     private SharedPreferences sharedPreferences;
 
@@ -58,8 +66,22 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                    selectedImageUri = result.getData().getData();
-                    loadImage(selectedImageUri);
+                    selectedImageUris.clear();
+                    ClipData clipData = result.getData().getClipData();
+                    if (clipData != null) {
+                        for (int i = 0; i < clipData.getItemCount(); i++) {
+                            selectedImageUris.add(clipData.getItemAt(i).getUri());
+                        }
+                    } else if (result.getData().getData() != null) {
+                        selectedImageUris.add(result.getData().getData());
+                    }
+                    if (!selectedImageUris.isEmpty()) {
+                        selectedImageUri = selectedImageUris.get(0);
+                        loadImage(selectedImageUri);
+                        if (selectedImageUris.size() > 1) {
+                            logManager.i(LogManager.LOG_IMAGE, "已选择 " + selectedImageUris.size() + " 张图片，将按批量任务生成");
+                        }
+                    }
                 }
             });
 
@@ -67,8 +89,11 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == RESULT_OK) {
+                    selectedImageUris.clear();
                     selectedImageUri = Uri.fromFile(new File(currentPhotoPath));
                     loadImage(selectedImageUri);
+                    // 用户填写参数时在后台准备好请求用的图片数据
+                    CapturedPayloads.getInstance().prepare(this, selectedImageUri);
                 }
             });
 
@@ -77,7 +102,8 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        sharedPreferences = getSharedPreferences("GeminiImageApp", MODE_PRIVATE);
+        // SharedPreferences已在应用启动时由后台线程预先读取
+        sharedPreferences = getSharedPreferences(AppServices.PREFS_NAME, MODE_PRIVATE);
         
         // 初始化日志管理器
         logManager = LogManager.getInstance();
@@ -89,6 +115,38 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
         initViews();
         loadSavedValues();
         setupListeners();
+        recordFirstFrame();
+        // 扫描任务日志需要读磁盘，放到后台线程
+        AppServices.getInstance(this).runInBackground(this::resumePendingJobs);
+    }
+
+    /**
+     * 第一帧绘制时记录启动耗时
+     */
+    private void recordFirstFrame() {
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                StartupMetrics.onFirstFrame();
+                // 绘制过程中不能移除监听器，推迟到下一次消息循环
+                final ViewTreeObserver.OnDrawListener listener = this;
+                content.post(() -> content.getViewTreeObserver().removeOnDrawListener(listener));
+            }
+        });
+    }
+
+    /**
+     * 恢复进程被杀死前未完成的任务，服务只会补齐尚未生成的图片
+     */
+    private void resumePendingJobs() {
+        for (String jobId : JobJournal.listPendingJobIds(ImageGenerationService.getJournalRoot(this))) {
+            logManager.i(LogManager.LOG_INIT, "发现未完成的任务，继续生成: " + jobId);
+            Intent serviceIntent = new Intent(this, ImageGenerationService.class);
+            serviceIntent.setAction(ImageGenerationService.ACTION_RESUME_JOB);
+            serviceIntent.putExtra(ImageGenerationService.EXTRA_JOB_ID, jobId);
+            startService(serviceIntent);
+        }
     }
 
     private void initViews() {
@@ -102,6 +160,7 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
         selectImageButton = findViewById(R.id.selectImageButton);
         takePhotoButton = findViewById(R.id.takePhotoButton);
         generateButton = findViewById(R.id.generateButton);
+        bypassCacheCheckBox = findViewById(R.id.bypassCacheCheckBox);
         progressBar = findViewById(R.id.progressBar);
         logView = findViewById(R.id.logView);
         
@@ -115,6 +174,7 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
         maxRetriesInput.setText(sharedPreferences.getString("maxRetries", "3"));
         lolicationInput.setText(sharedPreferences.getString("lolication", ""));
         posInput.setText(sharedPreferences.getString("pos", "，并保持原有姿态"));
+        bypassCacheCheckBox.setChecked(sharedPreferences.getBoolean("bypassCache", false));
     }
 
     private void setupListeners() {
@@ -182,6 +242,7 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
 
     private void openGallery() {
         Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         pickImageLauncher.launch(intent);
     }
 
@@ -229,12 +290,14 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
     }
 
     private void validateAndGenerate() {
+        StartupMetrics.onGenerateTapped();
         String apiKey = apiKeyInput.getText().toString().trim();
         String scene = sceneInput.getText().toString().trim();
         String numOutputsStr = numOutputsInput.getText().toString().trim();
         String maxRetriesStr = maxRetriesInput.getText().toString().trim();
         String lolication = lolicationInput.getText().toString().trim();
         String pos = posInput.getText().toString().trim();
+        boolean bypassCache = bypassCacheCheckBox.isChecked();
 
         logManager.d(LogManager.LOG_PARAMS, "开始验证参数");
         
@@ -246,6 +309,7 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
         editor.putString("maxRetries", maxRetriesStr);
         editor.putString("lolication", lolication);
         editor.putString("pos", pos);
+        editor.putBoolean("bypassCache", bypassCache);
         editor.apply();
         
         logManager.d(LogManager.LOG_PARAMS, "参数已保存到SharedPreferences");
@@ -304,18 +368,29 @@ public class MainActivity extends AppCompatActivity implements LogManager.LogLis
             "\n - 生成数量: " + numOutputs +
             "\n - 最大重试次数: " + maxRetries +
             "\n - 胸部描述: " + (lolication.isEmpty() ? "无" : lolication) +
-            "\n - 姿态描述: " + pos);
+            "\n - 姿态描述: " + pos +
+            "\n - 跳过缓存: " + (bypassCache ? "是" : "否") +
+            "\n - 原图数量: " + Math.max(1, selectedImageUris.size()));
 
 
         // 启动图像生成服务
         Intent serviceIntent = new Intent(this, ImageGenerationService.class);
+        serviceIntent.putExtra(ImageGenerationService.EXTRA_JOB_ID, UUID.randomUUID().toString());
         serviceIntent.putExtra("apiKey", apiKey);
         serviceIntent.putExtra("imageUri", selectedImageUri.toString());
+        if (selectedImageUris.size() > 1) {
+            ArrayList<String> imageUris = new ArrayList<>();
+            for (Uri uri : selectedImageUris) {
+                imageUris.add(uri.toString());
+            }
+            serviceIntent.putStringArrayListExtra(ImageGenerationService.EXTRA_IMAGE_URIS, imageUris);
+        }
         serviceIntent.putExtra("scene", scene);
         serviceIntent.putExtra("numOutputs", numOutputs);
         serviceIntent.putExtra("maxRetries", maxRetries);
         serviceIntent.putExtra("lolication", lolication);
         serviceIntent.putExtra("pos", pos);
+        serviceIntent.putExtra("bypassCache", bypassCache);
         
         startService(serviceIntent);
         logManager.i(LogManager.LOG_INIT, "图像生成服务已启动");
@@ -0,0 +1,68 @@
+package com.geminiimageapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import com.geminiimageapp.engine.NetworkGate;
+
+import static com.geminiimageapp.LogManager.*;
+
+/**
+ * 监听默认网络的变化并同步到NetworkGate，整个应用只注册一次
+ */
+public class NetworkMonitor extends ConnectivityManager.NetworkCallback {
+    private final ConnectivityManager connectivityManager;
+    private final NetworkGate networkGate;
+
+    private NetworkMonitor(ConnectivityManager connectivityManager, NetworkGate networkGate) {
+        this.connectivityManager = connectivityManager;
+        this.networkGate = networkGate;
+    }
+
+    /**
+     * 读取当前网络状态并开始监听
+     */
+    public static void start(Context context, NetworkGate networkGate) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            LogManager.getInstance().w(LOG_INIT, "无法获取ConnectivityManager，不监听网络状态");
+            return;
+        }
+        NetworkMonitor monitor = new NetworkMonitor(connectivityManager, networkGate);
+        Network active = connectivityManager.getActiveNetwork();
+        monitor.update(active != null ? connectivityManager.getNetworkCapabilities(active) : null);
+        try {
+            connectivityManager.registerDefaultNetworkCallback(monitor);
+        } catch (RuntimeException e) {
+            // 注册的回调数量超过系统限制等情况，保持当前状态
+            LogManager.getInstance().e(LOG_ERROR_TAG, "注册网络状态回调失败", e);
+        }
+    }
+
+    @Override
+    public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+        update(capabilities);
+    }
+
+    @Override
+    public void onLost(Network network) {
+        // 默认网络切换时也会先收到onLost，再次确认当前是否还有可用网络
+        Network active = connectivityManager.getActiveNetwork();
+        update(active != null ? connectivityManager.getNetworkCapabilities(active) : null);
+    }
+
+    private void update(NetworkCapabilities capabilities) {
+        if (capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            networkGate.update(false, false, -1);
+            return;
+        }
+        // 带宽变化也会触发回调，状态变化的日志由NetworkGate输出
+        // 不要求NET_CAPABILITY_VALIDATED：连通性检测服务器无法访问的地区，网络永远不会被标记为已验证
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        int upstreamKbps = capabilities.getLinkUpstreamBandwidthKbps();
+        networkGate.update(true, metered, upstreamKbps > 0 ? upstreamKbps : -1);
+    }
+}
@@ -55,6 +55,14 @@ public class ResultActivity extends AppCompatActivity {
         adapter = new ImagePagerAdapter(this, imagePaths);
         viewPager.setAdapter(adapter);
 
+        // 查看过的图片在输出目录超过配额时最后淘汰
+        AppServices appServices = AppServices.getInstance(this);
+        appServices.runInBackground(() -> {
+            for (String path : imagePaths) {
+                appServices.getOutputStorage().recordAccess(path);
+            }
+        });
+
         // 设置按钮点击事件
         saveButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -0,0 +1,58 @@
+package com.geminiimageapp;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import static com.geminiimageapp.LogManager.*;
+
+/**
+ * 启动耗时统计：进程启动到首帧、进程启动和点击生成到第一次发出API请求
+ * 每个进程只记录一次
+ */
+public final class StartupMetrics {
+    private static final LogManager logManager = LogManager.getInstance();
+
+    private static volatile long generateTappedAt = -1;
+    private static boolean firstFrameRecorded;
+    private static boolean firstRequestRecorded;
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * MainActivity第一帧绘制完成
+     */
+    public static synchronized void onFirstFrame() {
+        if (firstFrameRecorded) {
+            return;
+        }
+        firstFrameRecorded = true;
+        logManager.i(LOG_INIT, "启动耗时：进程启动到首帧 " + sinceProcessStart() + "ms");
+    }
+
+    /**
+     * 用户点击生成按钮
+     */
+    public static void onGenerateTapped() {
+        if (generateTappedAt < 0) {
+            generateTappedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 第一次发出API请求
+     */
+    public static synchronized void onFirstRequest() {
+        if (firstRequestRecorded) {
+            return;
+        }
+        firstRequestRecorded = true;
+        long tapped = generateTappedAt;
+        logManager.i(LOG_INIT, "启动耗时：进程启动到首次请求 " + sinceProcessStart() + "ms"
+                + (tapped >= 0 ? "，点击生成到首次请求 " + (SystemClock.elapsedRealtime() - tapped) + "ms" : ""));
+    }
+
+    private static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+}
@@ -0,0 +1,58 @@
+package com.geminiimageapp;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import com.geminiimageapp.engine.ImageSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 通过ContentResolver读取的图片来源（相册选择或拍照）
+ */
+public class UriImageSource implements ImageSource {
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+
+    public UriImageSource(ContentResolver contentResolver, Uri uri) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * ContentResolver记录的MIME类型，file://等URI可能为null
+     */
+    public String getType() {
+        return contentResolver.getType(uri);
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("无法打开输入流: " + uri);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public long length() {
+        try (AssetFileDescriptor afd = contentResolver.openAssetFileDescriptor(uri, "r")) {
+            return afd != null ? afd.getLength() : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return uri.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.Base64Codec;
+import com.geminiimageapp.loadtest.JdkBase64Codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64编码（上传的图片）和解码（返回的图片）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Base64Benchmark {
+
+    private final Base64Codec codec = new JdkBase64Codec();
+    private byte[] imageBytes;
+    private String base64Image;
+
+    @Setup
+    public void setUp() {
+        imageBytes = Payloads.imageBytes(Payloads.IMAGE_BYTES);
+        base64Image = codec.encode(imageBytes);
+    }
+
+    @Benchmark
+    public String encode() {
+        return codec.encode(imageBytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return codec.decode(base64Image);
+    }
+}
@@ -0,0 +1,61 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.Base64Codec;
+import com.geminiimageapp.engine.ByteArrayStreamPool;
+import com.geminiimageapp.loadtest.JdkBase64Codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JPEG压缩输出缓冲区：每次新建ByteArrayOutputStream再toByteArray()，与复用预先分配的缓冲区对比
+ * Bitmap.compress按8KB分块写入输出流，这里用同样的方式写入模拟的JPEG数据，然后编码为Base64
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JpegBufferBenchmark {
+    private static final int WRITE_CHUNK = 8192;
+
+    private final Base64Codec codec = new JdkBase64Codec();
+    private final ByteArrayStreamPool pool = new ByteArrayStreamPool(2, 8 * 1024 * 1024);
+    private byte[] jpegBytes;
+
+    @Setup
+    public void setUp() {
+        jpegBytes = Payloads.imageBytes(Payloads.IMAGE_BYTES);
+    }
+
+    @Benchmark
+    public String newStreamEachTime() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        compress(baos);
+        return codec.encode(baos.toByteArray());
+    }
+
+    @Benchmark
+    public String pooledStream() {
+        ByteArrayStreamPool.Stream buffer = pool.acquire(Payloads.IMAGE_BYTES);
+        try {
+            compress(buffer);
+            return codec.encode(buffer.array(), 0, buffer.size());
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private void compress(ByteArrayOutputStream out) {
+        for (int offset = 0; offset < jpegBytes.length; offset += WRITE_CHUNK) {
+            int length = Math.min(WRITE_CHUNK, jpegBytes.length - offset);
+            out.write(jpegBytes, offset, length);
+        }
+    }
+}
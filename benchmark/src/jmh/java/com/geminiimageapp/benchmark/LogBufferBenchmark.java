@@ -0,0 +1,47 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.LogBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志缓冲区写入（LogManager.addLog），缓冲区已满时每次写入都会移除最旧的条目
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogBufferBenchmark {
+    // 与LogManager的最大日志条数一致
+    private static final int CAPACITY = 1000;
+
+    private LogBuffer<String> buffer;
+
+    @Setup
+    public void setUp() {
+        buffer = new LogBuffer<>(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.add("【API调用】预填充日志 " + i);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addSingleThread() {
+        buffer.add("【API调用】第 1 张图片，尝试 1/3");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addContended() {
+        buffer.add("【API调用】第 1 张图片，尝试 1/3");
+    }
+}
@@ -0,0 +1,39 @@
+package com.geminiimageapp.benchmark;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * 基准测试使用的模拟数据，大小与真实请求相当
+ */
+final class Payloads {
+    // 2048px JPEG压缩后的典型大小
+    static final int IMAGE_BYTES = 2 * 1024 * 1024;
+
+    private Payloads() {
+    }
+
+    /**
+     * 随机字节，接近JPEG数据不可再压缩的特征
+     */
+    static byte[] imageBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    static String imageBase64(int size) {
+        return Base64.getEncoder().encodeToString(imageBytes(size));
+    }
+
+    /**
+     * 与generateContent真实响应结构一致的响应体，图像在文本部分之后
+     */
+    static String response(String base64Image) {
+        return "{\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":["
+                + "{\"text\":\"这是生成的图片\"},"
+                + "{\"inlineData\":{\"mimeType\":\"image/png\",\"data\":\"" + base64Image + "\"}}"
+                + "]},\"finishReason\":\"STOP\",\"index\":0}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":1290,\"candidatesTokenCount\":1290,\"totalTokenCount\":2580}}";
+    }
+}
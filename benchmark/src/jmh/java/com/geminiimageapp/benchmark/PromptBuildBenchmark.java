@@ -0,0 +1,45 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.PromptBuilder;
+import com.geminiimageapp.engine.PromptTemplate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词模板替换（buildPrompt）
+ * replaceChain是原来逐个占位符调用String.replace的做法，作为对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptBuildBenchmark {
+
+    private final PromptTemplate compiled =
+            PromptTemplate.compile("default", PromptBuilder.DEFAULT_TEMPLATE, PromptBuilder.SLOTS);
+
+    @Benchmark
+    public String buildDefaultPrompt() {
+        return PromptBuilder.build(PromptBuilder.DEFAULT_TEMPLATE, "漫展", "丰满的胸部", "", "，并保持原有姿态");
+    }
+
+    @Benchmark
+    public String renderCompiled() {
+        return PromptBuilder.render(compiled, "漫展", "丰满的胸部", "", "，并保持原有姿态");
+    }
+
+    @Benchmark
+    public String replaceChain() {
+        return PromptBuilder.DEFAULT_TEMPLATE
+                .replace("{scene}", "漫展")
+                .replace("{lolication}", "丰满的胸部")
+                .replace("{bodyInfo}", "")
+                .replace("{pos}", "，并保持原有姿态");
+    }
+}
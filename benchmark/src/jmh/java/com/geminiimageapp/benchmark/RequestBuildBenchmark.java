@@ -0,0 +1,42 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.GeminiRequestBuilder;
+import com.geminiimageapp.engine.PromptBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求体JSON构建（callGeminiApi中的请求准备阶段）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RequestBuildBenchmark {
+
+    @Param({"524288", "2097152"})
+    public int imageBytes;
+
+    private final GeminiRequestBuilder requestBuilder = new GeminiRequestBuilder();
+    private String prompt;
+    private String base64Image;
+
+    @Setup
+    public void setUp() {
+        prompt = PromptBuilder.build(null, "漫展", "", "除了胸部外", "，并保持原有姿态");
+        base64Image = Payloads.imageBase64(imageBytes);
+    }
+
+    @Benchmark
+    public String buildRequestJson() {
+        return requestBuilder.build(prompt, "image/jpeg", base64Image);
+    }
+}
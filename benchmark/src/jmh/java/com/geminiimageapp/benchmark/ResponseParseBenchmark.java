@@ -0,0 +1,40 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.GeminiException;
+import com.geminiimageapp.engine.GeminiResponseParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应解析（processGeminiResponse中提取图像数据的阶段）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResponseParseBenchmark {
+
+    @Param({"524288", "2097152"})
+    public int imageBytes;
+
+    private final GeminiResponseParser responseParser = new GeminiResponseParser();
+    private String responseJson;
+
+    @Setup
+    public void setUp() {
+        responseJson = Payloads.response(Payloads.imageBase64(imageBytes));
+    }
+
+    @Benchmark
+    public String extractImageData() throws GeminiException {
+        return responseParser.extractImageData(responseJson);
+    }
+}
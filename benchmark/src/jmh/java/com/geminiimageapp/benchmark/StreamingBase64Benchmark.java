@@ -0,0 +1,93 @@
+package com.geminiimageapp.benchmark;
+
+import com.geminiimageapp.engine.Base64Codec;
+import com.geminiimageapp.engine.StreamingBase64;
+import com.geminiimageapp.loadtest.JdkBase64Codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分块Base64编解码与原有路径的对比，数据来源和去向都是通道（读取图片文件、写入输出文件）
+ * 原有路径：读入完整的字节数组再编码；解码为完整的字节数组再写入
+ * 分配量用 ./gradlew :benchmark:jmh -Pjmh.profilers=gc 查看（gc.alloc.rate.norm）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamingBase64Benchmark {
+
+    private final Base64Codec codec = new JdkBase64Codec();
+    private byte[] imageBytes;
+    private String base64Image;
+
+    @Setup
+    public void setUp() {
+        imageBytes = Payloads.imageBytes(Payloads.IMAGE_BYTES);
+        base64Image = codec.encode(imageBytes);
+    }
+
+    @Benchmark
+    public String encodeFromStream() throws IOException {
+        InputStream in = new ByteArrayInputStream(imageBytes);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return codec.encode(buffer.toByteArray());
+    }
+
+    @Benchmark
+    public String streamingEncodeFromChannel() throws IOException {
+        return StreamingBase64.encode(Channels.newChannel(new ByteArrayInputStream(imageBytes)),
+                imageBytes.length, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long decodeToChannel() throws IOException {
+        byte[] decoded = codec.decode(base64Image);
+        return DISCARD.write(ByteBuffer.wrap(decoded));
+    }
+
+    @Benchmark
+    public long streamingDecodeToChannel() throws IOException {
+        return StreamingBase64.decode(base64Image, DISCARD);
+    }
+
+    /**
+     * 丢弃写入的数据，只消耗缓冲区
+     */
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,29 @@
+package com.geminiimageapp.loadtest;
+
+import com.geminiimageapp.engine.Base64Codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * JVM上的Base64实现，对应Android端的AndroidBase64Codec（NO_WRAP编码）
+ */
+public class JdkBase64Codec implements Base64Codec {
+
+    @Override
+    public String encode(byte[] data) {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    @Override
+    public String encode(byte[] data, int offset, int length) {
+        ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(data, offset, length));
+        return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public byte[] decode(String base64) {
+        return Base64.getMimeDecoder().decode(base64);
+    }
+}
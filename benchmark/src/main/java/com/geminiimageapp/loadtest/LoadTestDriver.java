@@ -0,0 +1,334 @@
+package com.geminiimageapp.loadtest;
+
+import com.geminiimageapp.engine.AdaptiveConcurrencyLimit;
+import com.geminiimageapp.engine.ApiKeyPool;
+import com.geminiimageapp.engine.EndpointRouter;
+import com.geminiimageapp.engine.EngineLog;
+import com.geminiimageapp.engine.GenerationEngine;
+import com.geminiimageapp.engine.HedgingTransport;
+import com.geminiimageapp.engine.KeyPoolTransport;
+import com.geminiimageapp.engine.LatencyTracker;
+import com.geminiimageapp.engine.OkHttpTransport;
+import com.geminiimageapp.engine.OutputSink;
+import com.geminiimageapp.engine.PayloadEncoder;
+import com.geminiimageapp.engine.PreparedImage;
+import com.geminiimageapp.engine.PromptBuilder;
+import com.geminiimageapp.engine.ThrottledTransport;
+import com.geminiimageapp.engine.TokenBucket;
+import com.geminiimageapp.engine.Transport;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * 端到端压测：用真实的网络、重试和响应解析代码请求本地模拟服务，统计吞吐量、延迟分位数和内存
+ *
+ * 参数（系统属性，通过Gradle运行时用-P传入）：
+ *   jobs 任务数，concurrency 并发任务数，outputs 每个任务的图片数，retries 最大重试次数，
+ *   retryDelayMs 重试间隔，latencyMs/latencyMaxMs 服务延迟范围，errorRate 500比例，
+ *   rateLimitRate 429比例，uploadKb 上传图片大小，responseKb 返回图片大小，
+ *   quotaPerSecond 服务每个密钥每秒的配额（0不限制），keys API密钥数量（大于1时使用密钥池），
+ *   throttle 是否启用客户端限流，rpm/burst 令牌桶参数（rpm为0时只限制并发），maxConcurrency 自适应并发上限，
+ *   tailRate/tailLatencyMs 慢请求比例和延迟，hedge 是否启用对冲请求，
+ *   hedgePercentile 超过哪个延迟分位时对冲，hedgeBudget 对冲请求比例上限，
+ *   gzip 是否压缩请求体，rejectGzip 模拟端点不接受压缩的请求体，
+ *   candidates 每次请求的候选结果数量，serverMaxCandidates 模拟服务支持的候选结果上限，
+ *   stream 是否使用流式端点，
+ *   endpoints 模拟服务（端点）数量（大于1时使用多端点路由），primaryErrorRate 第一个端点的500比例（模拟故障）
+ */
+public class LoadTestDriver {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = Integer.getInteger("jobs", 50);
+        int concurrency = Integer.getInteger("concurrency", 4);
+        int outputs = Integer.getInteger("outputs", 1);
+        int retries = Integer.getInteger("retries", 3);
+        long retryDelayMs = Long.getLong("retryDelayMs", 100);
+        int latencyMs = Integer.getInteger("latencyMs", 200);
+        int latencyMaxMs = Integer.getInteger("latencyMaxMs", 800);
+        double errorRate = Double.parseDouble(System.getProperty("errorRate", "0.05"));
+        double rateLimitRate = Double.parseDouble(System.getProperty("rateLimitRate", "0.05"));
+        int uploadKb = Integer.getInteger("uploadKb", 1024);
+        int responseKb = Integer.getInteger("responseKb", 1536);
+        int quotaPerSecond = Integer.getInteger("quotaPerSecond", 0);
+        boolean throttle = Boolean.getBoolean("throttle");
+        int rpm = Integer.getInteger("rpm", 600);
+        int burst = Integer.getInteger("burst", 5);
+        int maxConcurrency = Integer.getInteger("maxConcurrency", concurrency);
+        double tailRate = Double.parseDouble(System.getProperty("tailRate", "0"));
+        int tailLatencyMs = Integer.getInteger("tailLatencyMs", 5000);
+        boolean hedge = Boolean.getBoolean("hedge");
+        double hedgeBudget = Double.parseDouble(System.getProperty("hedgeBudget", "0.1"));
+        boolean gzip = Boolean.getBoolean("gzip");
+        boolean rejectGzip = Boolean.getBoolean("rejectGzip");
+        double hedgePercentile = Double.parseDouble(System.getProperty("hedgePercentile", "0.9"));
+        int candidates = Integer.getInteger("candidates", 1);
+        int serverMaxCandidates = Integer.getInteger("serverMaxCandidates", 8);
+        boolean stream = Boolean.getBoolean("stream");
+        int keys = Integer.getInteger("keys", 1);
+        int endpoints = Integer.getInteger("endpoints", 1);
+        double primaryErrorRate = Double.parseDouble(System.getProperty("primaryErrorRate", String.valueOf(errorRate)));
+
+        // 第一个模拟服务是主端点，其余的是备用端点
+        List<MockGeminiServer> servers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, endpoints); i++) {
+            MockGeminiServer server = new MockGeminiServer(latencyMs, latencyMaxMs, i == 0 ? primaryErrorRate : errorRate,
+                    rateLimitRate, responseKb * 1024);
+            server.setQuotaPerSecond(quotaPerSecond);
+            server.setTailLatency(tailRate, tailLatencyMs);
+            server.setRejectGzipRequests(rejectGzip);
+            server.setMaxCandidates(serverMaxCandidates);
+            server.start();
+            servers.add(server);
+        }
+
+        // 请求在OkHttp的调度器中异步执行，每个主机的并发数要大于压测并发（含对冲请求）
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(concurrency * 2 + 8);
+        dispatcher.setMaxRequestsPerHost(concurrency * 2 + 8);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .build();
+        // 对冲直接包装每个端点的实际请求，延迟和对冲计时不包括限流排队
+        List<OkHttpTransport> okHttpTransports = new ArrayList<>();
+        List<HedgingTransport> hedgingTransports = new ArrayList<>();
+        List<Transport> targets = new ArrayList<>();
+        for (MockGeminiServer server : servers) {
+            OkHttpTransport okHttpTransport = new OkHttpTransport(client, server.getEndpoint(), QUIET_LOG);
+            okHttpTransport.setRequestCompression(gzip);
+            okHttpTransports.add(okHttpTransport);
+            if (hedge) {
+                HedgingTransport hedgingTransport = new HedgingTransport(okHttpTransport, new LatencyTracker(200),
+                        hedgePercentile, hedgeBudget, 10, QUIET_LOG);
+                hedgingTransports.add(hedgingTransport);
+                targets.add(hedgingTransport);
+            } else {
+                targets.add(okHttpTransport);
+            }
+        }
+        Transport transport = targets.get(0);
+        EndpointRouter endpointRouter = null;
+        if (targets.size() > 1) {
+            endpointRouter = new EndpointRouter(targets, QUIET_LOG);
+            transport = endpointRouter;
+        }
+        AdaptiveConcurrencyLimit concurrencyLimit = null;
+        ApiKeyPool keyPool = null;
+        if (keys > 1) {
+            // 每个密钥各自限流，由密钥池分配请求
+            keyPool = new ApiKeyPool(QUIET_LOG);
+            Map<String, Integer> weights = new LinkedHashMap<>();
+            Map<String, Transport> keyTransports = new LinkedHashMap<>();
+            for (int i = 1; i <= keys; i++) {
+                String key = "load-test-key-" + i;
+                weights.put(key, 1);
+                keyTransports.put(key, throttle ? new ThrottledTransport(transport, tokenBucket(rpm, burst),
+                        new AdaptiveConcurrencyLimit(1, 1, maxConcurrency, 2.0, QUIET_LOG), QUIET_LOG) : transport);
+            }
+            keyPool.configure(weights);
+            transport = new KeyPoolTransport(keyPool, keyTransports, QUIET_LOG);
+        } else if (throttle) {
+            concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, maxConcurrency, 2.0, QUIET_LOG);
+            transport = new ThrottledTransport(transport, tokenBucket(rpm, burst), concurrencyLimit, QUIET_LOG);
+        }
+
+        // 输出只解码不落盘，压测的是网络、重试和解析
+        AtomicLong decodedBytes = new AtomicLong();
+        AtomicInteger outputCounter = new AtomicInteger();
+        OutputSink sink = imageData -> {
+            decodedBytes.addAndGet(imageData.length);
+            return "mock-output-" + outputCounter.incrementAndGet();
+        };
+
+        // 上传图片直接构造，不经过图片准备
+        byte[] upload = new byte[uploadKb * 1024];
+        new Random(1).nextBytes(upload);
+        PreparedImage image = new PreparedImage("image/jpeg", Base64.getEncoder().encodeToString(upload), false);
+        PayloadEncoder encoder = source -> image;
+        String prompt = PromptBuilder.build(null, "漫展", "", "除了胸部外", "，并保持原有姿态");
+
+        GenerationEngine engine = new GenerationEngine(encoder, transport, new JdkBase64Codec(), sink, QUIET_LOG, retryDelayMs);
+        engine.setMaxCandidates(candidates);
+        engine.setStreaming(stream);
+
+        MemorySampler memorySampler = new MemorySampler();
+        memorySampler.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Long> jobLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> firstOutputLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < jobs; i++) {
+            futures.add(pool.submit(() -> {
+                long jobStart = System.nanoTime();
+                List<String> paths = engine.generate("load-test-key", image, prompt, outputs, retries, new GenerationEngine.Listener() {
+                    @Override
+                    public void onStart(int total, int completed) {
+                    }
+
+                    @Override
+                    public void onAttempt(int index, int attempt, int maxRetries) {
+                    }
+
+                    @Override
+                    public void onOutput(int index, String path) {
+                        if (index == 0) {
+                            firstOutputLatencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - jobStart));
+                        }
+                    }
+                });
+                jobLatencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - jobStart));
+                succeeded.addAndGet(paths.size());
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        pool.shutdown();
+        for (HedgingTransport hedgingTransport : hedgingTransports) {
+            hedgingTransport.shutdown();
+        }
+        memorySampler.stop();
+        int requestCount = 0;
+        int errorCount = 0;
+        int rateLimitedCount = 0;
+        for (MockGeminiServer server : servers) {
+            server.shutdown();
+            requestCount += server.getRequestCount();
+            errorCount += server.getErrorCount();
+            rateLimitedCount += server.getRateLimitedCount();
+        }
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+
+        List<Long> sorted = new ArrayList<>(jobLatencies);
+        Collections.sort(sorted);
+        List<Long> sortedFirstOutputs = new ArrayList<>(firstOutputLatencies);
+        Collections.sort(sortedFirstOutputs);
+        System.out.println("==== 压测结果 ====");
+        System.out.println("任务数: " + jobs + "，并发: " + concurrency + "，每任务图片: " + outputs + "，最大重试: " + retries
+                + (candidates > 1 ? "，每次请求候选结果: " + candidates : "") + (stream ? "，流式端点" : ""));
+        if (concurrencyLimit != null) {
+            System.out.println("客户端限流: " + (rpm > 0 ? rpm + "次/分钟，突发: " + burst : "不限制速率")
+                    + "，最终并发上限: " + concurrencyLimit.getLimit());
+        }
+        if (keyPool != null) {
+            System.out.println("API密钥池: " + keyPool.summary());
+        }
+        System.out.println("服务延迟: " + latencyMs + "-" + latencyMaxMs + "ms，500比例: " + errorRate + "，429比例: " + rateLimitRate
+                + (tailRate > 0 ? "，慢请求: " + tailRate + "（" + tailLatencyMs + "ms）" : ""));
+        if (hedge) {
+            System.out.println("对冲请求: p" + Math.round(hedgePercentile * 100) + "，预算 " + hedgeBudget + "，额外请求 " + (requestCount - jobs * outputs) + " 次");
+        }
+        System.out.println("总耗时: " + elapsedMillis + "ms");
+        System.out.println("成功图片: " + succeeded.get() + "/" + (jobs * outputs)
+                + "，吞吐量: " + String.format("%.2f", succeeded.get() * 1000.0 / elapsedMillis) + " 张/秒");
+        System.out.println("请求数: " + requestCount + "，500: " + errorCount + "，429: " + rateLimitedCount);
+        if (endpointRouter != null) {
+            for (int i = 0; i < servers.size(); i++) {
+                System.out.println("端点 " + (i + 1) + (i == 0 ? "（主端点，500比例 " + primaryErrorRate + "）" : "") + ": 请求 "
+                        + servers.get(i).getRequestCount() + "，500: " + servers.get(i).getErrorCount());
+            }
+        }
+        System.out.println("任务延迟 p50: " + percentile(sorted, 0.50) + "ms，p90: " + percentile(sorted, 0.90)
+                + "ms，p99: " + percentile(sorted, 0.99) + "ms，最大: " + sorted.get(sorted.size() - 1) + "ms");
+        if (!sortedFirstOutputs.isEmpty()) {
+            System.out.println("首张图片延迟 p50: " + percentile(sortedFirstOutputs, 0.50) + "ms，p90: "
+                    + percentile(sortedFirstOutputs, 0.90) + "ms");
+        }
+        for (OkHttpTransport okHttpTransport : okHttpTransports) {
+            System.out.println("传输统计: " + okHttpTransport.getStats().summary());
+        }
+        System.out.println("解码数据: " + decodedBytes.get() / 1024 + "KB，堆内存峰值: " + memorySampler.getPeakBytes() / (1024 * 1024) + "MB");
+    }
+
+    private static TokenBucket tokenBucket(int rpm, int burst) {
+        return rpm > 0 ? new TokenBucket(rpm, burst) : null;
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    /**
+     * 定期采样堆内存使用量，记录峰值
+     */
+    private static class MemorySampler implements Runnable {
+        private final Thread thread = new Thread(this, "memory-sampler");
+        private volatile boolean running = true;
+        private volatile long peakBytes;
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        long getPeakBytes() {
+            return peakBytes;
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (running) {
+                peakBytes = Math.max(peakBytes, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 压测时不输出引擎日志，避免日志开销影响测量结果
+     */
+    private static final EngineLog QUIET_LOG = new EngineLog() {
+        @Override
+        public void i(String tag, String message) {
+        }
+
+        @Override
+        public void d(String tag, String message) {
+        }
+
+        @Override
+        public void w(String tag, String message) {
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable throwable) {
+        }
+
+        @Override
+        public void e(String tag, String message) {
+        }
+    };
+}
@@ -0,0 +1,287 @@
+package com.geminiimageapp.loadtest;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+/**
+ * 本地模拟的Gemini generateContent服务，可配置延迟、错误率、429比例和返回图片大小
+ * 还可以设置每个API密钥的每秒配额，超出配额的请求立即返回429（带retryDelay），模拟真实服务的限流；
+ * 以及少量特别慢的请求，模拟生成时间的长尾
+ * gzip：默认接受压缩的请求体并按Accept-Encoding压缩响应，也可以设置为拒绝压缩的请求（返回415）
+ * 请求generationConfig.candidateCount时返回相应数量的候选结果，超过支持的上限时返回400
+ * 流式端点（streamGenerateContent?alt=sse）先返回文本片段，然后每个候选结果的图片一个片段，
+ * 整个响应在延迟时间内均匀发送，n个候选结果时第一张图片在约1/n的延迟时到达
+ */
+public class MockGeminiServer {
+    private static final Pattern CANDIDATE_COUNT = Pattern.compile("\"candidateCount\"\\s*:\\s*(\\d+)");
+
+    private final MockWebServer server = new MockWebServer();
+    private final int minLatencyMillis;
+    private final int maxLatencyMillis;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final int imageBytes;
+    // 按候选结果数量缓存的响应体
+    private final Map<Integer, String> responseBodies = new ConcurrentHashMap<>();
+    private final Map<Integer, Buffer> gzipResponseBodies = new ConcurrentHashMap<>();
+    private volatile int maxCandidates = 8;
+    private final Map<Integer, String> streamImageData = new ConcurrentHashMap<>();
+    private volatile boolean rejectGzipRequests;
+    private int quotaPerSecond;
+    private double tailRate;
+    private int tailLatencyMillis;
+    // 每个API密钥的配额窗口：窗口开始时间和窗口内的请求数
+    private final Map<String, long[]> quotaWindows = new HashMap<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+
+    /**
+     * @param minLatencyMillis 最小响应延迟
+     * @param maxLatencyMillis 最大响应延迟，在两者之间均匀分布
+     * @param errorRate 返回500的比例
+     * @param rateLimitRate 返回429的比例
+     * @param imageBytes 返回图片的原始字节数
+     */
+    public MockGeminiServer(int minLatencyMillis, int maxLatencyMillis, double errorRate, double rateLimitRate, int imageBytes) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.errorRate = errorRate;
+        this.rateLimitRate = rateLimitRate;
+        this.imageBytes = imageBytes;
+        responseBodies.put(1, buildResponse(imageBytes, 1));
+    }
+
+    /**
+     * 一次请求最多支持的候选结果数量，1表示不支持多个候选结果
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * 每个API密钥每秒最多接受的请求数，0表示不限制
+     */
+    public void setQuotaPerSecond(int quotaPerSecond) {
+        this.quotaPerSecond = quotaPerSecond;
+    }
+
+    /**
+     * 一部分请求使用更长的延迟
+     * @param tailRate 慢请求的比例
+     * @param tailLatencyMillis 慢请求的延迟
+     */
+    public void setTailLatency(double tailRate, int tailLatencyMillis) {
+        this.tailRate = tailRate;
+        this.tailLatencyMillis = tailLatencyMillis;
+    }
+
+    /**
+     * 拒绝gzip压缩的请求体，用于测试客户端的回退
+     */
+    public void setRejectGzipRequests(boolean rejectGzipRequests) {
+        this.rejectGzipRequests = rejectGzipRequests;
+    }
+
+    public void start() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return handle(request);
+            }
+        });
+        server.start();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * generateContent端点地址
+     */
+    public String getEndpoint() {
+        return server.url("/v1beta/models/mock-image-model:generateContent").toString();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    public int getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    private MockResponse handle(RecordedRequest request) throws InterruptedException {
+        requests.incrementAndGet();
+        if (request.getHeader("x-goog-api-key") == null) {
+            return new MockResponse().setResponseCode(403)
+                    .setBody("{\"error\":{\"code\":403,\"message\":\"API key missing\"}}");
+        }
+
+        String requestJson;
+        if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+            if (rejectGzipRequests) {
+                return new MockResponse().setResponseCode(415)
+                        .setBody("{\"error\":{\"code\":415,\"message\":\"Unsupported Content-Encoding\"}}");
+            }
+            try (GzipSource source = new GzipSource(request.getBody())) {
+                requestJson = Okio.buffer(source).readUtf8();
+            } catch (IOException e) {
+                return new MockResponse().setResponseCode(400)
+                        .setBody("{\"error\":{\"code\":400,\"message\":\"Invalid gzip body\"}}");
+            }
+        } else {
+            requestJson = request.getBody().readUtf8();
+        }
+
+        Matcher matcher = CANDIDATE_COUNT.matcher(requestJson);
+        int candidates = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+        if (candidates > maxCandidates) {
+            return new MockResponse().setResponseCode(400)
+                    .setBody("{\"error\":{\"code\":400,\"message\":\"Multiple candidates is not enabled for this model\"}}");
+        }
+
+        long quotaRetryMillis = takeQuota(request.getHeader("x-goog-api-key"));
+        if (quotaRetryMillis > 0) {
+            rateLimited.incrementAndGet();
+            // 与真实服务一样在RetryInfo中给出建议的等待时间
+            return new MockResponse().setResponseCode(429)
+                    .setBody("{\"error\":{\"code\":429,\"status\":\"RESOURCE_EXHAUSTED\",\"details\":[{"
+                            + "\"@type\":\"type.googleapis.com/google.rpc.RetryInfo\",\"retryDelay\":\""
+                            + String.format(Locale.US, "%.3f", quotaRetryMillis / 1000.0) + "s\"}]}}");
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int latency = minLatencyMillis + (maxLatencyMillis > minLatencyMillis
+                ? random.nextInt(maxLatencyMillis - minLatencyMillis + 1) : 0);
+        if (tailRate > 0 && random.nextDouble() < tailRate) {
+            latency = tailLatencyMillis;
+        }
+        boolean streaming = request.getPath() != null && request.getPath().contains(":streamGenerateContent");
+        if (!streaming) {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        }
+
+        double roll = random.nextDouble();
+        if (roll < rateLimitRate) {
+            rateLimited.incrementAndGet();
+            return new MockResponse().setResponseCode(429)
+                    .setBody("{\"error\":{\"code\":429,\"status\":\"RESOURCE_EXHAUSTED\"}}");
+        }
+        if (roll < rateLimitRate + errorRate) {
+            errors.incrementAndGet();
+            return new MockResponse().setResponseCode(500)
+                    .setBody("{\"error\":{\"code\":500,\"status\":\"INTERNAL\"}}");
+        }
+        if (streaming) {
+            return streamResponse(candidates, latency);
+        }
+        MockResponse response = new MockResponse().setResponseCode(200)
+                .setHeader("Content-Type", "application/json; charset=UTF-8");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        String responseBody = responseBodies.computeIfAbsent(candidates, n -> buildResponse(imageBytes, n));
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            Buffer gzipResponseBody = gzipResponseBodies.computeIfAbsent(candidates, n -> gzip(responseBody));
+            return response.setHeader("Content-Encoding", "gzip").setBody(gzipResponseBody.clone());
+        }
+        return response.setBody(responseBody);
+    }
+
+    private MockResponse streamResponse(int candidates, int transferMillis) {
+        String image = streamImageData.computeIfAbsent(0, n -> {
+            byte[] data = new byte[imageBytes];
+            new Random(7).nextBytes(data);
+            return Base64.getEncoder().encodeToString(data);
+        });
+        StringBuilder body = new StringBuilder();
+        body.append("data: {\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":[{\"text\":\"这是生成的图片\"}]},\"index\":0}]}\r\n\r\n");
+        for (int i = 0; i < candidates; i++) {
+            body.append("data: {\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":[")
+                    .append("{\"inlineData\":{\"mimeType\":\"image/png\",\"data\":\"").append(image).append("\"}}")
+                    .append("]},\"finishReason\":\"STOP\",\"index\":").append(i).append("}]}\r\n\r\n");
+        }
+        body.append("data: {\"usageMetadata\":{\"candidatesTokenCount\":").append(candidates * 1290).append("}}\r\n\r\n");
+        MockResponse response = new MockResponse().setResponseCode(200)
+                .setHeader("Content-Type", "text/event-stream")
+                .setChunkedBody(body.toString(), 64 * 1024);
+        if (transferMillis > 0) {
+            long bytesPerTenMillis = Math.max(1, (long) body.length() * 10 / transferMillis);
+            response.throttleBody(bytesPerTenMillis, 10, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    /**
+     * 按API密钥计算配额
+     * @return 0表示接受；超出配额时返回距离窗口结束的毫秒数
+     */
+    private synchronized long takeQuota(String apiKey) {
+        if (quotaPerSecond <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long[] window = quotaWindows.get(apiKey);
+        if (window == null) {
+            window = new long[2];
+            quotaWindows.put(apiKey, window);
+        }
+        if (now - window[0] >= 1000) {
+            window[0] = now;
+            window[1] = 0;
+        }
+        return ++window[1] <= quotaPerSecond ? 0 : Math.max(1, window[0] + 1000 - now);
+    }
+
+    private static Buffer gzip(String body) {
+        Buffer buffer = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+            sink.writeUtf8(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer;
+    }
+
+    private static String buildResponse(int imageBytes, int candidates) {
+        byte[] image = new byte[imageBytes];
+        new Random(7).nextBytes(image);
+        String base64Image = Base64.getEncoder().encodeToString(image);
+        StringBuilder response = new StringBuilder("{\"candidates\":[");
+        for (int i = 0; i < candidates; i++) {
+            if (i > 0) {
+                response.append(',');
+            }
+            response.append("{\"content\":{\"role\":\"model\",\"parts\":[")
+                    .append("{\"text\":\"这是生成的图片\"},")
+                    .append("{\"inlineData\":{\"mimeType\":\"image/png\",\"data\":\"").append(base64Image).append("\"}}")
+                    .append("]},\"finishReason\":\"STOP\",\"index\":").append(i).append('}');
+        }
+        return response.append("]}").toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.geminiimageapp.engine;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * AIMD自适应并发限制
+ * 请求成功且延迟正常时并发上限缓慢增加（每满一轮加1），遇到429/5xx或超时时减半；
+ * 延迟明显高于最低延迟时保持不变，说明服务端已接近饱和
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final EngineLog log;
+
+    private double limit;
+    private int inFlight;
+    // 观察到的最低延迟，作为服务端空闲时的基准
+    private long minLatencyMillis = Long.MAX_VALUE;
+
+    /**
+     * @param latencyTolerance 延迟超过最低延迟的多少倍时停止增加并发
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double latencyTolerance, EngineLog log) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.latencyTolerance = latencyTolerance;
+        this.log = log;
+    }
+
+    /**
+     * 等待并发名额
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * 请求成功，根据延迟决定是否增加并发
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        release();
+        minLatencyMillis = Math.min(minLatencyMillis, latencyMillis);
+        if (latencyMillis > minLatencyMillis * latencyTolerance) {
+            return;
+        }
+        int before = (int) limit;
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+        if ((int) limit != before) {
+            log.d(LOG_API, "并发上限增加到 " + (int) limit);
+            notifyAll();
+        }
+    }
+
+    /**
+     * 请求被限流或服务端过载，并发减半
+     */
+    public synchronized void onOverload() {
+        release();
+        int before = (int) limit;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        if ((int) limit != before) {
+            log.w(LOG_API, "服务端过载，并发上限降低到 " + (int) limit);
+        }
+    }
+
+    /**
+     * 与服务端负载无关的失败（参数错误、解析失败等），只释放名额
+     */
+    public synchronized void onIgnore() {
+        release();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,224 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * API密钥池：按权重在多个密钥之间平滑轮询分配请求
+ * 返回429的密钥进入冷却期（优先使用响应中的retryDelay，否则从30秒开始连续翻倍），冷却期间不再分配；
+ * 密钥无效（401/403）时停用较长时间。所有密钥都在冷却时，只在最早结束的429冷却不超过等待上限时等待，
+ * 否则立即失败，由调用方按普通的失败重试；所有密钥都无效时也立即失败
+ */
+public class ApiKeyPool {
+    static final long BASE_COOLDOWN_MILLIS = 30 * 1000;
+    static final long MAX_COOLDOWN_MILLIS = 10 * 60 * 1000;
+    static final long INVALID_KEY_COOLDOWN_MILLIS = 60 * 60 * 1000;
+    // 覆盖Gemini常见的retryDelay（几十秒），不会让调用线程长时间阻塞
+    static final long DEFAULT_MAX_WAIT_MILLIS = 60 * 1000;
+
+    // Gemini的429响应在RetryInfo中给出建议的等待时间，例如 "retryDelay": "37s"
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+
+    private final EngineLog log;
+    private final long maxWaitMillis;
+    // 保持配置中的顺序；重新配置时保留仍然存在的密钥的状态
+    private final Map<String, KeyState> keys = new LinkedHashMap<>();
+
+    /**
+     * 一个密钥的权重、冷却状态和使用统计
+     */
+    private static class KeyState {
+        final String key;
+        int weight;
+        // 平滑加权轮询的当前值
+        int currentWeight;
+        long cooldownUntil;
+        // 因401/403停用，冷却结束或请求成功后清除
+        boolean invalid;
+        int consecutiveRateLimits;
+        long requests;
+        long successes;
+        long rateLimited;
+        long failures;
+
+        KeyState(String key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    public ApiKeyPool(EngineLog log) {
+        this(DEFAULT_MAX_WAIT_MILLIS, log);
+    }
+
+    /**
+     * @param maxWaitMillis 所有密钥都在429冷却时最多等待多久
+     */
+    public ApiKeyPool(long maxWaitMillis, EngineLog log) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.log = log;
+    }
+
+    /**
+     * 设置密钥和权重，已有密钥的冷却状态和统计保留
+     * @param weights 密钥到权重（不小于1），保持迭代顺序
+     */
+    public synchronized void configure(Map<String, Integer> weights) {
+        Map<String, KeyState> previous = new LinkedHashMap<>(keys);
+        keys.clear();
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            KeyState state = previous.get(entry.getKey());
+            if (state == null) {
+                state = new KeyState(entry.getKey(), 1);
+            }
+            state.weight = Math.max(1, entry.getValue());
+            keys.put(entry.getKey(), state);
+        }
+        notifyAll();
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    public synchronized List<String> getKeys() {
+        return new ArrayList<>(keys.keySet());
+    }
+
+    /**
+     * 取得下一个要使用的密钥，所有密钥都在429冷却时最多等待maxWaitMillis
+     * @param exclude 不使用的密钥（例如刚刚返回429的），可以为null；没有其他可用密钥时返回null
+     * @throws KeyPoolExhaustedException 没有exclude时，所有密钥都无效，或冷却在等待上限内不会结束
+     */
+    public synchronized String acquire(String exclude) throws InterruptedException, KeyPoolExhaustedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (true) {
+            if (keys.isEmpty()) {
+                throw new IllegalStateException("密钥池为空");
+            }
+            long now = System.currentTimeMillis();
+            KeyState best = null;
+            int totalWeight = 0;
+            long earliestReady = Long.MAX_VALUE;
+            boolean othersExist = false;
+            for (KeyState state : keys.values()) {
+                if (state.key.equals(exclude)) {
+                    continue;
+                }
+                othersExist = true;
+                if (state.cooldownUntil > now) {
+                    // 无效的密钥不值得等待
+                    if (!state.invalid) {
+                        earliestReady = Math.min(earliestReady, state.cooldownUntil);
+                    }
+                    continue;
+                }
+                state.currentWeight += state.weight;
+                totalWeight += state.weight;
+                if (best == null || state.currentWeight > best.currentWeight) {
+                    best = state;
+                }
+            }
+            if (best != null) {
+                best.currentWeight -= totalWeight;
+                best.requests++;
+                return best.key;
+            }
+            if (!othersExist || exclude != null) {
+                // 换密钥重试时不等待，由调用方按原来的失败处理
+                return null;
+            }
+            if (earliestReady == Long.MAX_VALUE) {
+                throw new KeyPoolExhaustedException("所有API密钥都无效或没有权限");
+            }
+            if (earliestReady > deadline) {
+                throw new KeyPoolExhaustedException("所有API密钥都在冷却中，最早 " + (earliestReady - now) / 1000
+                        + " 秒后恢复，超过等待上限 " + maxWaitMillis / 1000 + " 秒");
+            }
+            long waitMillis = earliestReady - now;
+            log.w(LOG_API, "所有API密钥都在冷却中，等待 " + waitMillis + "ms");
+            wait(waitMillis);
+        }
+    }
+
+    /**
+     * 记录请求结果，429时密钥进入冷却
+     * @param statusCode 成功时为200，网络错误为0
+     * @param message 失败时的错误信息，用于读取建议的等待时间
+     * @return 密钥因本次结果进入冷却或停用时返回true
+     */
+    public synchronized boolean report(String key, int statusCode, String message) {
+        KeyState state = keys.get(key);
+        if (state == null) {
+            return false;
+        }
+        if (statusCode >= 200 && statusCode < 300) {
+            state.successes++;
+            state.consecutiveRateLimits = 0;
+            state.invalid = false;
+            return false;
+        }
+        if (statusCode == 429) {
+            state.rateLimited++;
+            long cooldown = parseRetryDelay(message);
+            if (cooldown <= 0) {
+                cooldown = Math.min(MAX_COOLDOWN_MILLIS, BASE_COOLDOWN_MILLIS << Math.min(state.consecutiveRateLimits, 10));
+            }
+            state.consecutiveRateLimits++;
+            state.invalid = false;
+            state.cooldownUntil = System.currentTimeMillis() + cooldown;
+            log.w(LOG_API, "API密钥 " + mask(key) + " 返回429，冷却 " + cooldown / 1000 + " 秒");
+            return true;
+        }
+        state.failures++;
+        if (statusCode == 401 || statusCode == 403) {
+            state.invalid = true;
+            state.cooldownUntil = System.currentTimeMillis() + INVALID_KEY_COOLDOWN_MILLIS;
+            log.e(LOG_ERROR_TAG, "API密钥 " + mask(key) + " 无效或没有权限（" + statusCode + "），停用 "
+                    + INVALID_KEY_COOLDOWN_MILLIS / 60000 + " 分钟");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 每个密钥的使用统计
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (KeyState state : keys.values()) {
+            if (sb.length() > 0) {
+                sb.append("；");
+            }
+            sb.append(mask(state.key)).append("（权重").append(state.weight).append("）: 请求 ").append(state.requests)
+                    .append("，成功 ").append(state.successes).append("，429 ").append(state.rateLimited)
+                    .append("，其他失败 ").append(state.failures);
+            if (state.cooldownUntil > now) {
+                sb.append("，冷却剩余 ").append((state.cooldownUntil - now) / 1000).append(" 秒");
+            }
+        }
+        return sb.toString();
+    }
+
+    static long parseRetryDelay(String message) {
+        if (message == null) {
+            return -1;
+        }
+        Matcher matcher = RETRY_DELAY.matcher(message);
+        if (!matcher.find()) {
+            return -1;
+        }
+        return (long) (Double.parseDouble(matcher.group(1)) * 1000);
+    }
+
+    static String mask(String key) {
+        return key.substring(0, Math.min(4, key.length())) + "..." + key.substring(Math.max(0, key.length() - 4));
+    }
+}
@@ -0,0 +1,30 @@
+package com.geminiimageapp.engine;
+
+import java.util.Arrays;
+
+/**
+ * Base64编解码接口，Android端使用android.util.Base64实现，JVM端可使用java.util.Base64
+ */
+public interface Base64Codec {
+
+    /**
+     * 编码为不换行的Base64字符串
+     */
+    String encode(byte[] data);
+
+    /**
+     * 编码数组的一部分，用于直接编码可复用缓冲区的内容
+     * 默认实现会复制这部分数据，实现类应尽量直接编码
+     */
+    default String encode(byte[] data, int offset, int length) {
+        if (offset == 0 && length == data.length) {
+            return encode(data);
+        }
+        return encode(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    /**
+     * 解码Base64字符串
+     */
+    byte[] decode(String base64);
+}
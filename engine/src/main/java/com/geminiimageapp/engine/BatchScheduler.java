@@ -0,0 +1,181 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 批量任务调度：多张原图，每张生成若干图片
+ * 图片准备（解码、压缩、编码）在准备线程池中并行进行，准备好的数据交给并发数有限的网络阶段；
+ * 网络阶段忙不过来时暂停准备新的图片，避免大量图片数据同时占用内存
+ */
+public class BatchScheduler {
+    private final GenerationEngine engine;
+    private final int prepareThreads;
+    private final int maxConcurrentRequests;
+    private final EngineLog log;
+
+    /**
+     * 批量任务中的一张原图
+     */
+    public static class Item {
+        private final GenerationJob job;
+        private final JobJournal journal;
+        private final ImageSource source;
+
+        public Item(GenerationJob job, JobJournal journal, ImageSource source) {
+            this.job = job;
+            this.journal = journal;
+            this.source = source;
+        }
+
+        public GenerationJob getJob() {
+            return job;
+        }
+    }
+
+    /**
+     * 每张原图的进度回调，可能在不同线程中调用
+     */
+    public interface Listener {
+        /**
+         * 开始准备图片数据
+         */
+        void onItemPreparing(int index);
+
+        /**
+         * 图片数据准备完成，开始生成
+         * @param total 这张原图需要的图片数量
+         * @param completed 已经完成的数量（恢复任务时不为0）
+         */
+        void onItemStart(int index, int total, int completed);
+
+        void onItemAttempt(int index, int outputIndex, int attempt, int maxRetries);
+
+        void onItemOutput(int index, int outputIndex, String path);
+
+        /**
+         * 这张原图处理结束，图片无法读取时结果为空
+         */
+        void onItemFinished(int index, GenerationResult result);
+    }
+
+    /**
+     * @param prepareThreads 并行准备图片数据的线程数
+     * @param maxConcurrentRequests 同时进行的API请求数
+     */
+    public BatchScheduler(GenerationEngine engine, int prepareThreads, int maxConcurrentRequests, EngineLog log) {
+        this.engine = engine;
+        this.prepareThreads = Math.max(1, prepareThreads);
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.log = log;
+    }
+
+    /**
+     * 执行批量任务，全部处理结束后返回
+     * @return 按原图顺序排列的结果
+     */
+    public List<GenerationResult> run(List<Item> items, String apiKey, Listener listener) throws InterruptedException {
+        log.d(LOG_PROCESS, "开始批量任务，原图数量: " + items.size() + "，准备线程: " + prepareThreads
+                + "，并发请求: " + maxConcurrentRequests);
+        GenerationResult[] results = new GenerationResult[items.size()];
+        CountDownLatch finished = new CountDownLatch(items.size());
+        // 占用内存的图片数据数量上限：正在请求的加上每个准备线程预先准备好的一份
+        Semaphore payloadSlots = new Semaphore(maxConcurrentRequests + prepareThreads);
+        ExecutorService preparePool = Executors.newFixedThreadPool(prepareThreads);
+        ExecutorService networkPool = Executors.newFixedThreadPool(maxConcurrentRequests);
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                payloadSlots.acquire();
+                final int index = i;
+                preparePool.execute(() -> prepareItem(index, items.get(index), apiKey, listener,
+                        results, networkPool, payloadSlots, finished));
+            }
+            finished.await();
+        } finally {
+            preparePool.shutdownNow();
+            networkPool.shutdownNow();
+        }
+
+        int totalImages = 0;
+        for (GenerationResult result : results) {
+            totalImages += result.getImagePaths().size();
+        }
+        log.d(LOG_PROCESS, "批量任务完成，共生成 " + totalImages + " 张图片");
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    private void prepareItem(int index, Item item, String apiKey, Listener listener, GenerationResult[] results,
+                             ExecutorService networkPool, Semaphore payloadSlots, CountDownLatch finished) {
+        listener.onItemPreparing(index);
+        PreparedImage image;
+        try {
+            image = engine.prepare(item.journal, item.source);
+        } catch (InterruptedException e) {
+            // 批量任务被取消，保留任务日志以便恢复
+            Thread.currentThread().interrupt();
+            results[index] = new GenerationResult(new ArrayList<String>(), false);
+            payloadSlots.release();
+            finished.countDown();
+            return;
+        } catch (Exception e) {
+            log.e(LOG_ERROR_TAG, "第 " + (index + 1) + " 张原图准备失败: " + e.getMessage(), e);
+            image = null;
+        }
+        if (image == null) {
+            finishItem(index, item, new GenerationResult(new ArrayList<String>(), false), listener, results);
+            payloadSlots.release();
+            finished.countDown();
+            return;
+        }
+
+        final PreparedImage prepared = image;
+        networkPool.execute(() -> {
+            try {
+                GenerationResult result = engine.run(item.job, apiKey, item.journal, prepared, new GenerationEngine.Listener() {
+                    @Override
+                    public void onStart(int total, int completed) {
+                        listener.onItemStart(index, total, completed);
+                    }
+
+                    @Override
+                    public void onAttempt(int outputIndex, int attempt, int maxRetries) {
+                        listener.onItemAttempt(index, outputIndex, attempt, maxRetries);
+                    }
+
+                    @Override
+                    public void onOutput(int outputIndex, String path) {
+                        listener.onItemOutput(index, outputIndex, path);
+                    }
+                });
+                finishItem(index, item, result, listener, results);
+            } catch (InterruptedException e) {
+                // 批量任务被取消，保留任务日志以便恢复
+                Thread.currentThread().interrupt();
+                results[index] = new GenerationResult(new ArrayList<String>(), false);
+            } catch (RuntimeException e) {
+                log.e(LOG_ERROR_TAG, "第 " + (index + 1) + " 张原图处理出错: " + e.getMessage(), e);
+                finishItem(index, item, new GenerationResult(new ArrayList<String>(), false), listener, results);
+            } finally {
+                payloadSlots.release();
+                finished.countDown();
+            }
+        });
+    }
+
+    /**
+     * 一张原图正常结束（无论成功与否），删除它的任务日志
+     */
+    private void finishItem(int index, Item item, GenerationResult result, Listener listener, GenerationResult[] results) {
+        results[index] = result;
+        item.journal.finish();
+        log.d(LOG_PROCESS, "第 " + (index + 1) + " 张原图处理结束，生成 " + result.getImagePaths().size() + " 张图片");
+        listener.onItemFinished(index, result);
+    }
+}
@@ -0,0 +1,74 @@
+package com.geminiimageapp.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 可复用的字节输出流池，用于JPEG压缩等输出大小可以预估的场景
+ * 流按预估大小预先分配，写完后通过array()/size()直接读取内部数组，不需要toByteArray()复制
+ * 池空时临时创建新的流，归还时容量超过上限的直接丢弃，避免长期占用过大的数组
+ */
+public class ByteArrayStreamPool {
+    private final int maxRetainedBytes;
+    private final ArrayBlockingQueue<Stream> streams;
+
+    /**
+     * 可以直接读取内部数组的ByteArrayOutputStream
+     */
+    public static class Stream extends ByteArrayOutputStream {
+        Stream(int initialSize) {
+            super(initialSize);
+        }
+
+        /**
+         * 内部数组，有效数据为前size()个字节，归还到池之前有效
+         */
+        public byte[] array() {
+            return buf;
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * 清空并保证容量不小于指定大小，容量不足时直接分配新数组，不复制旧数据
+         */
+        void resetTo(int minCapacity) {
+            count = 0;
+            if (buf.length < minCapacity) {
+                buf = new byte[minCapacity];
+            }
+        }
+    }
+
+    /**
+     * @param maxPooled 最多保留的流数量
+     * @param maxRetainedBytes 归还时保留的最大容量
+     */
+    public ByteArrayStreamPool(int maxPooled, int maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.streams = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * 取得一个已清空、容量不小于预估大小的流，用完后调用release归还
+     * @param expectedSize 预估的输出字节数，实际输出更大时按ByteArrayOutputStream的方式扩容
+     */
+    public Stream acquire(int expectedSize) {
+        int size = Math.max(expectedSize, 32);
+        Stream stream = streams.poll();
+        if (stream == null) {
+            return new Stream(size);
+        }
+        stream.resetTo(size);
+        return stream;
+    }
+
+    public void release(Stream stream) {
+        if (stream.capacity() <= maxRetainedBytes) {
+            stream.reset();
+            streams.offer(stream);
+        }
+    }
+}
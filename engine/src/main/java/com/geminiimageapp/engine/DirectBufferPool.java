@@ -0,0 +1,37 @@
+package com.geminiimageapp.engine;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 固定大小的直接缓冲区池，分块编解码时复用，避免每次分配
+ * 池空时临时分配新的缓冲区，归还时超出容量的直接丢弃
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * @param bufferSize 每个缓冲区的字节数
+     * @param maxPooled 最多保留的缓冲区数量
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * 取得一个已清空的缓冲区，用完后调用release归还
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffer.clear();
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 多端点路由：按配置顺序给出若干个端点（不同的基础地址、代理或模型），每个请求发往当前最健康的一个
+ * 健康度由近期延迟和错误率的指数移动平均计算，错误率随时间衰减；连续失败的端点暂时摘除，之后再放回尝试
+ * 网络错误、5xx和429时在同一个请求内立即换下一个端点重发，任务中途也能切换，
+ * 流式请求只在还没有收到任何片段时切换。4xx（429除外）是请求本身的问题，不切换
+ */
+public class EndpointRouter implements StreamingTransport {
+    // 指数移动平均的权重
+    private static final double ALPHA = 0.2;
+    // 错误率对健康分数的放大倍数：错误率50%的端点相当于延迟为3倍
+    private static final double ERROR_PENALTY = 4.0;
+    // 配置中靠后的端点需要明显更健康才会被优先使用
+    private static final double ORDER_PENALTY = 0.25;
+    // 错误率随时间衰减的半衰期，流量切走后原来的端点过一段时间会重新被尝试
+    static final long ERROR_HALF_LIFE_MILLIS = 60 * 1000;
+    private static final int EJECT_AFTER_FAILURES = 3;
+    static final long BASE_EJECT_MILLIS = 30 * 1000;
+    static final long MAX_EJECT_MILLIS = 5 * 60 * 1000;
+
+    private final List<Target> targets = new ArrayList<>();
+    private final EngineLog log;
+
+    /**
+     * 一个端点和它的健康状态
+     */
+    private static class Target {
+        final Transport transport;
+        final int order;
+        double latencyMillis;
+        boolean sampled;
+        double errorRate;
+        long errorUpdatedAt;
+        int consecutiveFailures;
+        int ejections;
+        long ejectedUntil;
+        long requests;
+        long failures;
+
+        Target(Transport transport, int order) {
+            this.transport = transport;
+            this.order = order;
+        }
+
+        /**
+         * @param defaultLatency 还没有成功样本时使用的延迟估计
+         */
+        double score(double defaultLatency, long now) {
+            double latency = sampled ? latencyMillis : defaultLatency;
+            return latency * (1 + ERROR_PENALTY * currentErrorRate(now)) * (1 + ORDER_PENALTY * order);
+        }
+
+        double currentErrorRate(long now) {
+            if (errorRate == 0) {
+                return 0;
+            }
+            return errorRate * Math.pow(0.5, (double) (now - errorUpdatedAt) / ERROR_HALF_LIFE_MILLIS);
+        }
+
+        void updateErrorRate(double sample, long now) {
+            errorRate = currentErrorRate(now);
+            errorRate += ALPHA * (sample - errorRate);
+            errorUpdatedAt = now;
+        }
+    }
+
+    /**
+     * @param transports 按优先顺序排列的端点传输，第一个是主端点
+     */
+    public EndpointRouter(List<Transport> transports, EngineLog log) {
+        if (transports.isEmpty()) {
+            throw new IllegalArgumentException("端点列表为空");
+        }
+        for (int i = 0; i < transports.size(); i++) {
+            targets.add(new Target(transports.get(i), i));
+        }
+        this.log = log;
+    }
+
+    /**
+     * 主端点的地址，切换端点不影响相同请求的识别（合并和缓存）
+     */
+    @Override
+    public String getEndpoint() {
+        return targets.get(0).transport.getEndpoint();
+    }
+
+    @Override
+    public String send(String apiKey, String requestJson) throws GeminiException {
+        return route(transport -> transport.send(apiKey, requestJson), () -> true);
+    }
+
+    @Override
+    public void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+        boolean[] received = new boolean[1];
+        route(transport -> {
+            if (!(transport instanceof StreamingTransport)) {
+                throw new GeminiException("传输不支持流式请求: " + transport.getClass().getSimpleName());
+            }
+            ((StreamingTransport) transport).stream(apiKey, requestJson, chunkJson -> {
+                received[0] = true;
+                handler.onChunk(chunkJson);
+            });
+            return null;
+        }, () -> !received[0]);
+    }
+
+    private interface RoutedRequest<T> {
+        T execute(Transport transport) throws GeminiException;
+    }
+
+    private interface RetryCheck {
+        boolean canRetry();
+    }
+
+    private <T> T route(RoutedRequest<T> request, RetryCheck retryCheck) throws GeminiException {
+        List<Target> tried = new ArrayList<>();
+        while (true) {
+            Target target = select(tried);
+            tried.add(target);
+            long startTime = System.currentTimeMillis();
+            try {
+                T response = request.execute(target.transport);
+                recordSuccess(target, System.currentTimeMillis() - startTime);
+                return response;
+            } catch (GeminiException e) {
+                if (Thread.currentThread().isInterrupted() || !isFailover(e)) {
+                    throw e;
+                }
+                recordFailure(target);
+                if (tried.size() >= targets.size() || !retryCheck.canRetry()) {
+                    throw e;
+                }
+                log.w(LOG_API, "端点 " + target.transport.getEndpoint() + " 请求失败（" + e.getStatusCode()
+                        + "），切换到其他端点重发");
+            }
+        }
+    }
+
+    /**
+     * 选择未尝试过的端点中健康分数最低的；都被摘除时选择最早恢复的
+     */
+    private synchronized Target select(List<Target> exclude) {
+        long now = System.currentTimeMillis();
+        // 没有样本的端点按其他端点的平均延迟估计，不会因为没有数据而被优先或被冷落
+        double latencySum = 0;
+        int sampledCount = 0;
+        for (Target target : targets) {
+            if (target.sampled) {
+                latencySum += target.latencyMillis;
+                sampledCount++;
+            }
+        }
+        double defaultLatency = sampledCount > 0 ? latencySum / sampledCount : 1000;
+        Target best = null;
+        Target earliest = null;
+        for (Target target : targets) {
+            if (exclude.contains(target)) {
+                continue;
+            }
+            if (target.ejectedUntil > now) {
+                if (earliest == null || target.ejectedUntil < earliest.ejectedUntil) {
+                    earliest = target;
+                }
+                continue;
+            }
+            if (best == null || target.score(defaultLatency, now) < best.score(defaultLatency, now)) {
+                best = target;
+            }
+        }
+        Target selected = best != null ? best : earliest;
+        selected.requests++;
+        return selected;
+    }
+
+    private synchronized void recordSuccess(Target target, long latencyMillis) {
+        if (target.sampled) {
+            target.latencyMillis += ALPHA * (latencyMillis - target.latencyMillis);
+        } else {
+            target.latencyMillis = latencyMillis;
+            target.sampled = true;
+        }
+        target.updateErrorRate(0, System.currentTimeMillis());
+        target.consecutiveFailures = 0;
+        target.ejections = 0;
+    }
+
+    private synchronized void recordFailure(Target target) {
+        target.failures++;
+        target.updateErrorRate(1, System.currentTimeMillis());
+        if (++target.consecutiveFailures >= EJECT_AFTER_FAILURES) {
+            long ejectMillis = Math.min(MAX_EJECT_MILLIS, BASE_EJECT_MILLIS << Math.min(target.ejections, 10));
+            target.ejections++;
+            target.consecutiveFailures = 0;
+            target.ejectedUntil = System.currentTimeMillis() + ejectMillis;
+            log.w(LOG_API, "端点 " + target.transport.getEndpoint() + " 连续失败，暂停使用 " + ejectMillis / 1000 + " 秒");
+        }
+    }
+
+    /**
+     * 网络错误、5xx和429可能只是这个端点的问题，换端点重发
+     */
+    private static boolean isFailover(GeminiException e) {
+        if (e instanceof KeyPoolExhaustedException) {
+            // 请求没有发出，与端点的健康状况无关；密钥池由所有端点共用，换端点也没有可用的密钥
+            return false;
+        }
+        int statusCode = e.getStatusCode();
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * 每个端点的健康状态
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (Target target : targets) {
+            if (sb.length() > 0) {
+                sb.append("；");
+            }
+            sb.append(target.transport.getEndpoint()).append(": 请求 ").append(target.requests)
+                    .append("，失败 ").append(target.failures)
+                    .append("，延迟约 ").append(target.sampled ? Math.round(target.latencyMillis) + "ms" : "未知")
+                    .append("，错误率 ").append(Math.round(target.currentErrorRate(now) * 100)).append("%");
+            if (target.ejectedUntil > now) {
+                sb.append("，暂停剩余 ").append((target.ejectedUntil - now) / 1000).append(" 秒");
+            }
+        }
+        return sb.toString();
+    }
+}
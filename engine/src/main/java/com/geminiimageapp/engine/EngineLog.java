@@ -0,0 +1,40 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 引擎日志接口，Android端由LogManager实现
+ */
+public interface EngineLog {
+
+    // 日志标记前缀
+    String LOG_INIT = "【初始化】";
+    String LOG_PARAMS = "【参数处理】";
+    String LOG_API = "【API调用】";
+    String LOG_PROCESS = "【响应处理】";
+    String LOG_IMAGE = "【图片处理】";
+    String LOG_ERROR_TAG = "【错误处理】";
+
+    /**
+     * 添加信息日志
+     */
+    void i(String tag, String message);
+
+    /**
+     * 添加调试日志
+     */
+    void d(String tag, String message);
+
+    /**
+     * 添加警告日志
+     */
+    void w(String tag, String message);
+
+    /**
+     * 添加错误日志
+     */
+    void e(String tag, String message, Throwable throwable);
+
+    /**
+     * 添加错误日志（无异常）
+     */
+    void e(String tag, String message);
+}
@@ -0,0 +1,144 @@
+package com.geminiimageapp.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 把生成的图片保存为输出目录中的文件，目录和配额由OutputStorage管理
+ * 先写入临时文件再重命名为最终文件名，读取方不会看到写了一半的图片
+ * Base64数据可以直接分块解码写入文件，不生成完整的解码结果数组
+ */
+public class FileOutputSink implements StreamingOutputSink {
+    /**
+     * 写入完成后的持久化程度
+     */
+    public enum Durability {
+        // 只保证重命名的原子性，系统崩溃或断电时最近写入的图片可能丢失
+        NONE,
+        // 重命名前把数据刷到存储设备
+        FDATASYNC;
+
+        /**
+         * 解析配置值，无法识别时返回默认值
+         */
+        public static Durability parse(String value, Durability defaultValue) {
+            for (Durability durability : values()) {
+                if (durability.name().equalsIgnoreCase(value)) {
+                    return durability;
+                }
+            }
+            return defaultValue;
+        }
+    }
+
+    static final String TEMP_PREFIX = ".";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final OutputStorage storage;
+    private final Durability durability;
+    private final EngineLog log;
+
+    // 正在写入的最终文件名，重命名前文件还不存在，需要在内存中占位
+    private final Set<String> reservedNames = new HashSet<>();
+
+    public FileOutputSink(OutputStorage storage, Durability durability, EngineLog log) {
+        this.storage = storage;
+        this.durability = durability;
+        this.log = log;
+    }
+
+    private interface ContentWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    @Override
+    public String save(byte[] imageData) throws IOException {
+        log.d(LOG_IMAGE, "开始保存生成的图片，图像数据大小: " + imageData.length + "字节");
+        return saveAtomically(channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(imageData);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    @Override
+    public String saveBase64(CharSequence base64Data) throws IOException {
+        log.d(LOG_IMAGE, "开始保存生成的图片，Base64长度: " + base64Data.length() + "字符");
+        return saveAtomically(channel -> {
+            try {
+                long written = StreamingBase64.decode(base64Data, channel);
+                log.d(LOG_IMAGE, "Base64分块解码完成，图像数据大小: " + written + "字节");
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Base64解码失败: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private String saveAtomically(ContentWriter writer) throws IOException {
+        File storageDir = storage.shardDir();
+
+        File imageFile = reserveName(storageDir);
+        File tempFile = new File(storageDir, TEMP_PREFIX + imageFile.getName() + TEMP_SUFFIX);
+        try {
+            // 写入临时文件；FileChannel.open和File.toPath需要API 26，通过FileOutputStream取得通道
+            try (FileOutputStream output = new FileOutputStream(tempFile);
+                 FileChannel channel = output.getChannel()) {
+                writer.write(channel);
+                if (durability == Durability.FDATASYNC) {
+                    channel.force(false);
+                }
+            }
+
+            // 重命名为最终文件名
+            if (!tempFile.renameTo(imageFile)) {
+                throw new IOException("无法重命名临时文件: " + tempFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        } finally {
+            synchronized (reservedNames) {
+                reservedNames.remove(imageFile.getAbsolutePath());
+            }
+        }
+
+        storage.recordAdded(imageFile);
+        log.d(LOG_IMAGE, "图片保存完成: " + imageFile.getAbsolutePath());
+        return imageFile.getAbsolutePath();
+    }
+
+    /**
+     * 选择一个未被使用的文件名
+     */
+    private File reserveName(File storageDir) {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        String baseName = "GEN_" + timeStamp + "_" + System.currentTimeMillis();
+        synchronized (reservedNames) {
+            File imageFile = new File(storageDir, baseName + ".png");
+            // 同一毫秒内并发保存时文件名会重复，加序号区分
+            for (int i = 1; imageFile.exists() || reservedNames.contains(imageFile.getAbsolutePath()); i++) {
+                imageFile = new File(storageDir, baseName + "_" + i + ".png");
+            }
+            reservedNames.add(imageFile.getAbsolutePath());
+            return imageFile;
+        }
+    }
+
+    /**
+     * 是否是未完成写入的临时文件
+     */
+    static boolean isTempFile(File file) {
+        return file.getName().startsWith(TEMP_PREFIX) && file.getName().endsWith(TEMP_SUFFIX);
+    }
+}
@@ -0,0 +1,32 @@
+package com.geminiimageapp.engine;
+
+/**
+ * Gemini请求或响应处理失败
+ */
+public class GeminiException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    // HTTP状态码，不是HTTP错误时为0
+    private final int statusCode;
+
+    public GeminiException(String message) {
+        this(message, 0, null);
+    }
+
+    public GeminiException(String message, Throwable cause) {
+        this(message, 0, cause);
+    }
+
+    public GeminiException(String message, int statusCode) {
+        this(message, statusCode, null);
+    }
+
+    public GeminiException(String message, int statusCode, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
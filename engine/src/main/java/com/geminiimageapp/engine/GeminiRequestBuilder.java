@@ -0,0 +1,58 @@
+package com.geminiimageapp.engine;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * 构建generateContent请求体JSON
+ */
+public class GeminiRequestBuilder {
+    private final Gson gson = new Gson();
+
+    /**
+     * @param prompt 提示词
+     * @param mimeType 图片MIME类型，要和Base64数据的实际格式对应
+     * @param base64Image Base64编码的图片数据
+     * @return 请求体JSON字符串
+     */
+    public String build(String prompt, String mimeType, String base64Image) {
+        return build(prompt, mimeType, base64Image, 1);
+    }
+
+    /**
+     * @param candidateCount 一次请求生成的候选结果数量，大于1时写入generationConfig
+     */
+    public String build(String prompt, String mimeType, String base64Image, int candidateCount) {
+        JsonObject requestBody = new JsonObject();
+        JsonArray contents = new JsonArray();
+        JsonObject content = new JsonObject();
+        JsonArray parts = new JsonArray();
+
+        // 文本部分
+        JsonObject textPart = new JsonObject();
+        textPart.addProperty("text", prompt);
+        parts.add(textPart);
+
+        // 图片部分
+        JsonObject imagePart = new JsonObject();
+        JsonObject imageData = new JsonObject();
+        imageData.addProperty("mime_type", mimeType);
+        imageData.addProperty("data", base64Image);
+        imagePart.add("inline_data", imageData);
+        parts.add(imagePart);
+
+        // 封装 parts -> contents
+        content.add("parts", parts);
+        contents.add(content);
+        requestBody.add("contents", contents);
+
+        if (candidateCount > 1) {
+            JsonObject generationConfig = new JsonObject();
+            generationConfig.addProperty("candidateCount", candidateCount);
+            requestBody.add("generationConfig", generationConfig);
+        }
+
+        return gson.toJson(requestBody);
+    }
+}
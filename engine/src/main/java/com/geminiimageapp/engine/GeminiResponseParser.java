@@ -0,0 +1,132 @@
+package com.geminiimageapp.engine;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析generateContent响应，提取生成的图像数据
+ */
+public class GeminiResponseParser {
+    private final Gson gson = new Gson();
+
+    /**
+     * 流式响应片段中各部分的回调
+     */
+    public interface PartHandler {
+        void onText(String text) throws GeminiException;
+
+        /**
+         * @param base64Data Base64编码的图像数据
+         */
+        void onImage(String base64Data) throws GeminiException;
+    }
+
+    /**
+     * 查找第一个候选结果中的图像数据
+     * @return Base64编码的图像数据
+     * @throws GeminiException 响应格式不正确或没有图像数据
+     */
+    public String extractImageData(String responseJson) throws GeminiException {
+        JsonObject candidate = parseCandidates(responseJson).get(0).getAsJsonObject();
+        if (!candidate.has("content")) {
+            throw new GeminiException("API响应中candidate没有content字段");
+        }
+
+        JsonObject content = candidate.getAsJsonObject("content");
+        if (!content.has("parts") || content.getAsJsonArray("parts").size() == 0) {
+            throw new GeminiException("API响应中content没有parts字段或parts为空");
+        }
+
+        // 查找包含图像数据的部分
+        for (JsonElement partElement : content.getAsJsonArray("parts")) {
+            JsonObject part = partElement.getAsJsonObject();
+            if (part.has("inlineData")) {
+                return part.getAsJsonObject("inlineData").get("data").getAsString();
+            }
+        }
+
+        throw new GeminiException("API响应中没有找到图像数据");
+    }
+
+    /**
+     * 提取所有候选结果中的全部图像数据，没有内容的候选结果（例如被安全过滤）跳过
+     * @return Base64编码的图像数据，按候选结果和parts的顺序
+     * @throws GeminiException 响应格式不正确或所有候选结果都没有图像数据
+     */
+    public List<String> extractAllImageData(String responseJson) throws GeminiException {
+        List<String> images = new ArrayList<>();
+        for (JsonElement candidateElement : parseCandidates(responseJson)) {
+            JsonObject candidate = candidateElement.getAsJsonObject();
+            if (!candidate.has("content") || !candidate.getAsJsonObject("content").has("parts")) {
+                continue;
+            }
+            for (JsonElement partElement : candidate.getAsJsonObject("content").getAsJsonArray("parts")) {
+                JsonObject part = partElement.getAsJsonObject();
+                if (part.has("inlineData")) {
+                    images.add(part.getAsJsonObject("inlineData").get("data").getAsString());
+                }
+            }
+        }
+        if (images.isEmpty()) {
+            throw new GeminiException("API响应中没有找到图像数据");
+        }
+        return images;
+    }
+
+    /**
+     * 解析流式响应的一个片段，按顺序回调其中的文本和图像部分
+     * 片段中可以没有候选结果（例如最后只带用量信息的片段）
+     * @throws GeminiException 片段不是有效的JSON或提示词被拦截
+     */
+    public void parseChunk(String chunkJson, PartHandler handler) throws GeminiException {
+        JsonObject chunk;
+        try {
+            chunk = gson.fromJson(chunkJson, JsonObject.class);
+        } catch (RuntimeException e) {
+            throw new GeminiException("流式响应片段不是有效的JSON", e);
+        }
+        if (chunk == null) {
+            return;
+        }
+        if (chunk.has("promptFeedback") && chunk.getAsJsonObject("promptFeedback").has("blockReason")) {
+            throw new GeminiException("请求被拦截: " + chunk.getAsJsonObject("promptFeedback").get("blockReason").getAsString());
+        }
+        if (!chunk.has("candidates")) {
+            return;
+        }
+        for (JsonElement candidateElement : chunk.getAsJsonArray("candidates")) {
+            JsonObject candidate = candidateElement.getAsJsonObject();
+            if (!candidate.has("content") || !candidate.getAsJsonObject("content").has("parts")) {
+                continue;
+            }
+            for (JsonElement partElement : candidate.getAsJsonObject("content").getAsJsonArray("parts")) {
+                JsonObject part = partElement.getAsJsonObject();
+                if (part.has("inlineData")) {
+                    handler.onImage(part.getAsJsonObject("inlineData").get("data").getAsString());
+                } else if (part.has("text")) {
+                    handler.onText(part.get("text").getAsString());
+                }
+            }
+        }
+    }
+
+    private JsonArray parseCandidates(String responseJson) throws GeminiException {
+        JsonObject jsonResponse;
+        try {
+            jsonResponse = gson.fromJson(responseJson, JsonObject.class);
+        } catch (RuntimeException e) {
+            throw new GeminiException("API响应不是有效的JSON", e);
+        }
+
+        if (jsonResponse == null || !jsonResponse.has("candidates") || jsonResponse.getAsJsonArray("candidates").size() == 0) {
+            throw new GeminiException("API响应中没有candidates字段，响应内容: "
+                    + responseJson.substring(0, Math.min(500, responseJson.length())));
+        }
+        return jsonResponse.getAsJsonArray("candidates");
+    }
+}
@@ -0,0 +1,408 @@
+package com.geminiimageapp.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 生成引擎：准备请求图片，按数量和重试次数调用API，解析响应并输出图片
+ * 任务日志、相同任务合并和响应缓存也在这里处理，平台相关的部分通过接口注入
+ */
+public class GenerationEngine {
+    private final PayloadEncoder payloadEncoder;
+    private final Transport transport;
+    private final Base64Codec base64Codec;
+    private final OutputSink outputSink;
+    private final EngineLog log;
+    private final long retryDelayMillis;
+    private final GeminiRequestBuilder requestBuilder = new GeminiRequestBuilder();
+    private final GeminiResponseParser responseParser = new GeminiResponseParser();
+
+    // 可选功能，未设置时不启用
+    private SingleFlight<List<String>> singleFlight;
+    private ResponseCache responseCache;
+    private PayloadPrefetcher prefetcher;
+    private NetworkGate networkGate;
+    // 每次请求的候选结果数量上限，模型不支持时自动降为1
+    private volatile int maxCandidates = 1;
+    private boolean streaming;
+
+    /**
+     * @param retryDelayMillis 失败后等待多久再重试
+     */
+    public GenerationEngine(PayloadEncoder payloadEncoder, Transport transport, Base64Codec base64Codec,
+                            OutputSink outputSink, EngineLog log, long retryDelayMillis) {
+        this.payloadEncoder = payloadEncoder;
+        this.transport = transport;
+        this.base64Codec = base64Codec;
+        this.outputSink = outputSink;
+        this.log = log;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * 合并相同的任务（同样的图片、提示词和端点）
+     */
+    public void setSingleFlight(SingleFlight<List<String>> singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * 启用响应缓存
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * 启用图片预先准备，任务排队时准备与上一个任务的网络请求重叠进行
+     */
+    public void setPrefetcher(PayloadPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * 请求前等待网络可用，网络断开期间失败的尝试不计入重试次数
+     */
+    public void setNetworkGate(NetworkGate networkGate) {
+        this.networkGate = networkGate;
+    }
+
+    /**
+     * 每次请求最多要求几个候选结果，减少上传输入图片的次数；模型不支持时自动改为1
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    /**
+     * 使用流式端点，图片一到达就保存，不等待完整的响应；传输不支持流式请求时仍使用普通请求
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        if (streaming && !(transport instanceof StreamingTransport)) {
+            log.w(LOG_INIT, "传输不支持流式请求，使用普通请求");
+        }
+    }
+
+    /**
+     * 生成过程的回调
+     */
+    public interface Listener {
+        /**
+         * 开始生成
+         * @param total 需要的图片总数
+         * @param completed 已经完成的数量（恢复任务时不为0）
+         */
+        void onStart(int total, int completed);
+
+        /**
+         * 开始一次尝试
+         * @param index 图片序号，从0开始
+         * @param attempt 尝试序号，从0开始
+         */
+        void onAttempt(int index, int attempt, int maxRetries);
+
+        /**
+         * 一张图片生成（或从缓存取得）并保存成功
+         */
+        void onOutput(int index, String path);
+    }
+
+    /**
+     * 准备请求图片数据，任务日志中已有时直接复用
+     * @return 图片无法读取时返回null
+     */
+    public PreparedImage prepare(JobJournal journal, ImageSource source) throws IOException, InterruptedException {
+        PreparedImage image = journal.readPayload();
+        if (image != null) {
+            log.d(LOG_IMAGE, "使用任务日志中的图片数据，Base64长度: " + image.getBase64Data().length() + "字符");
+            return image;
+        }
+
+        log.d(LOG_IMAGE, "开始处理输入图片: " + source.describe());
+        try {
+            image = prefetcher != null ? prefetcher.take(journal.getJobId(), source) : payloadEncoder.encode(source);
+        } catch (IOException e) {
+            log.e(LOG_ERROR_TAG, "读取图片时出错: " + e.getMessage(), e);
+            return null;
+        }
+        journal.writePayload(image);
+        return image;
+    }
+
+    /**
+     * 执行任务：合并相同任务、读取缓存，只生成任务日志中尚未完成的部分
+     */
+    public GenerationResult run(GenerationJob job, String apiKey, JobJournal journal, PreparedImage image,
+                                Listener listener) throws InterruptedException {
+        String requestKey = RequestDigest.of(transport.getEndpoint(), image.getMimeType(), image.getBase64Data(), job.getPrompt());
+
+        // 相同图片、提示词和端点的任务正在进行时，等待并共享它的结果；要求新结果的任务不合并也不被合并
+        SingleFlight.Call<List<String>> flight = singleFlight != null && !job.isBypassCache()
+                ? singleFlight.join(requestKey) : null;
+        if (flight != null && !flight.isLeader()) {
+            log.i(LOG_PROCESS, "相同的任务正在进行中，合并到该任务的结果，不再重复调用API");
+            List<String> sharedPaths = flight.await();
+            log.d(LOG_PROCESS, "合并的任务完成，共享 " + (sharedPaths == null ? 0 : sharedPaths.size()) + " 张图片");
+            return new GenerationResult(sharedPaths == null ? new ArrayList<String>() : sharedPaths, true);
+        }
+
+        List<String> imagePaths = journal.getCompletedOutputs();
+        try {
+            int numOutputs = job.getNumOutputs();
+            listener.onStart(numOutputs, imagePaths.size());
+            if (!imagePaths.isEmpty()) {
+                log.i(LOG_PROCESS, "任务日志中已完成 " + imagePaths.size() + " 张图片，剩余 " + Math.max(0, numOutputs - imagePaths.size()) + " 张");
+            }
+
+            // 响应缓存：相同请求直接返回缓存的图片，只生成不足的部分
+            ResponseCache cache = responseCache;
+            if (imagePaths.size() < numOutputs && cache != null) {
+                if (job.isBypassCache()) {
+                    log.d(LOG_PROCESS, "本次任务跳过响应缓存");
+                } else {
+                    for (File cached : cache.get(requestKey, numOutputs - imagePaths.size())) {
+                        try {
+                            String imagePath = outputSink.save(readFile(cached));
+                            imagePaths.add(imagePath);
+                            journal.recordOutput(imagePath);
+                            listener.onOutput(imagePaths.size() - 1, imagePath);
+                        } catch (IOException e) {
+                            log.e(LOG_ERROR_TAG, "复制缓存图片时出错: " + e.getMessage(), e);
+                        }
+                    }
+                }
+            }
+
+            int remaining = numOutputs - imagePaths.size();
+            if (remaining > 0) {
+                log.d(LOG_API, "开始生成图片，数量: " + remaining + "，最大重试次数: " + job.getMaxRetries());
+                final int offset = imagePaths.size();
+                imagePaths.addAll(generate(apiKey, image, job.getPrompt(), remaining, job.getMaxRetries(), new Listener() {
+                    @Override
+                    public void onStart(int total, int completed) {
+                    }
+
+                    @Override
+                    public void onAttempt(int index, int attempt, int maxRetries) {
+                        listener.onAttempt(offset + index, attempt, maxRetries);
+                    }
+
+                    @Override
+                    public void onOutput(int index, String imagePath) {
+                        journal.recordOutput(imagePath);
+                        if (cache != null) {
+                            cache.put(requestKey, new File(imagePath));
+                        }
+                        listener.onOutput(offset + index, imagePath);
+                    }
+                }));
+            }
+            if (cache != null) {
+                cache.trim();
+            }
+        } finally {
+            if (flight != null) {
+                flight.complete(imagePaths);
+            }
+        }
+        return new GenerationResult(imagePaths, false);
+    }
+
+    /**
+     * 生成图片，不使用任务日志和缓存
+     * 每次请求最多要求maxCandidates个候选结果，返回的图片保存到numOutputs张为止，不足的部分再次请求
+     * @return 成功保存的图片路径
+     */
+    public List<String> generate(String apiKey, PreparedImage image, String prompt, int numOutputs, int maxRetries,
+                                 Listener listener) {
+        List<String> savedImagePaths = new ArrayList<>();
+        int failedOutputs = 0;
+        int attempt = 0;
+        // 等待网络超时后不再豁免失败的尝试，避免网络一直不可用时无限等待
+        boolean networkWaitExpired = false;
+
+        // 请求体按候选数量各构建一次，所有尝试共用
+        Map<Integer, String> requestJsons = new HashMap<>();
+
+        while (savedImagePaths.size() + failedOutputs < numOutputs) {
+            int index = savedImagePaths.size() + failedOutputs;
+            int candidates = Math.min(maxCandidates, numOutputs - index);
+            String requestJson = requestJsons.get(candidates);
+            if (requestJson == null) {
+                requestJson = requestBuilder.build(prompt, image.getMimeType(), image.getBase64Data(), candidates);
+                requestJsons.put(candidates, requestJson);
+            }
+
+            if (attempt == 0) {
+                log.d(LOG_API, "开始生成第 " + (index + 1) + "/" + numOutputs + " 张图片"
+                        + (candidates > 1 ? "，本次请求 " + candidates + " 个候选结果" : ""));
+            }
+            log.d(LOG_API, "第 " + (index + 1) + " 张图片，尝试 " + (attempt + 1) + "/" + maxRetries);
+            if (networkGate != null) {
+                try {
+                    if (!networkGate.awaitReady()) {
+                        networkWaitExpired = true;
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    log.w(LOG_ERROR_TAG, "线程中断，停止生成");
+                    return savedImagePaths;
+                }
+            }
+            if (listener != null) {
+                listener.onAttempt(index, attempt, maxRetries);
+            }
+
+            int saved = attemptOnce(apiKey, requestJson, candidates, numOutputs - index, savedImagePaths, listener);
+            if (saved < 0) {
+                // 模型不支持多个候选结果，改为每次一个立即重发，不计入重试次数
+                continue;
+            }
+            if (saved > 0) {
+                attempt = 0;
+            } else if (networkGate != null && !networkWaitExpired && !networkGate.isConnected()) {
+                // 失败是因为网络断开，等网络恢复后重发，不消耗重试次数
+                log.w(LOG_API, "第 " + (index + 1) + " 张图片请求失败时网络已断开，本次不计入重试次数");
+            } else if (++attempt >= maxRetries) {
+                log.e(LOG_ERROR_TAG, "第 " + (index + 1) + " 张图片在 " + maxRetries + " 次尝试后仍然失败");
+                failedOutputs++;
+                attempt = 0;
+            } else {
+                log.w(LOG_API, "第 " + (index + 1) + " 张图片，尝试 " + attempt + " 失败，等待" + retryDelayMillis + "ms后重试");
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    log.w(LOG_ERROR_TAG, "线程中断，停止生成");
+                    return savedImagePaths;
+                }
+            }
+        }
+
+        log.d(LOG_PROCESS, "图片生成完成，共生成 " + savedImagePaths.size() + "/" + numOutputs + " 张图片");
+        return savedImagePaths;
+    }
+
+    /**
+     * 发送一次请求并保存返回的图片，流式请求时每张图片一到达就保存
+     * @param limit 最多保存几张，即任务还需要的数量；模型返回更多时多余的不保存
+     * @return 本次保存的图片数量；模型不支持多个候选结果时返回-1
+     */
+    private int attemptOnce(String apiKey, String requestJson, int candidates, int limit, List<String> savedImagePaths,
+                            Listener listener) {
+        int before = savedImagePaths.size();
+        try {
+            if (streaming && transport instanceof StreamingTransport) {
+                streamOnce(apiKey, requestJson, limit, savedImagePaths, listener);
+            } else {
+                String responseJson = transport.send(apiKey, requestJson);
+
+                log.d(LOG_PROCESS, "开始处理API响应");
+                List<String> images = responseParser.extractAllImageData(responseJson);
+                log.d(LOG_PROCESS, "找到 " + images.size() + " 张图像数据");
+                if (images.size() > limit) {
+                    log.d(LOG_PROCESS, "只需要 " + limit + " 张，其余 " + (images.size() - limit) + " 张不保存");
+                    images = images.subList(0, limit);
+                }
+
+                for (String base64Data : images) {
+                    saveOutput(base64Data, savedImagePaths, listener);
+                }
+            }
+        } catch (GeminiException e) {
+            if (candidates > 1 && savedImagePaths.size() == before && isCandidateCountRejected(e)) {
+                maxCandidates = 1;
+                log.w(LOG_API, "模型不支持一次生成多个候选结果，改为每次请求一张: " + e.getMessage());
+                return -1;
+            }
+            log.e(LOG_ERROR_TAG, e.getMessage());
+        } catch (Exception e) {
+            log.e(LOG_ERROR_TAG, "处理API响应时出错: " + e.getMessage(), e);
+        }
+        // 流式请求中途失败时，已经保存的图片仍然有效
+        return savedImagePaths.size() - before;
+    }
+
+    /**
+     * 流式请求：文本部分立即写入日志，图片部分到达后立即解码保存，保存到limit张为止
+     */
+    private void streamOnce(String apiKey, String requestJson, int limit, List<String> savedImagePaths,
+                            Listener listener) throws GeminiException {
+        int before = savedImagePaths.size();
+        long startTime = System.currentTimeMillis();
+        GeminiResponseParser.PartHandler partHandler = new GeminiResponseParser.PartHandler() {
+            @Override
+            public void onText(String text) {
+                log.i(LOG_API, "模型输出: " + text);
+            }
+
+            @Override
+            public void onImage(String base64Data) throws GeminiException {
+                if (savedImagePaths.size() - before >= limit) {
+                    log.d(LOG_PROCESS, "已保存需要的 " + limit + " 张图片，多余的图片不保存");
+                    return;
+                }
+                if (savedImagePaths.size() == before) {
+                    log.d(LOG_API, "收到第一张图片，耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+                }
+                try {
+                    saveOutput(base64Data, savedImagePaths, listener);
+                } catch (IOException e) {
+                    throw new GeminiException("保存图片时出错: " + e.getMessage(), e);
+                }
+            }
+        };
+        ((StreamingTransport) transport).stream(apiKey, requestJson,
+                chunkJson -> responseParser.parseChunk(chunkJson, partHandler));
+        if (savedImagePaths.size() == before) {
+            throw new GeminiException("流式响应中没有找到图像数据");
+        }
+    }
+
+    private void saveOutput(String base64Data, List<String> savedImagePaths, Listener listener) throws IOException {
+        String imagePath;
+        if (outputSink instanceof StreamingOutputSink) {
+            // 边解码边写入，不生成完整的解码结果数组
+            imagePath = ((StreamingOutputSink) outputSink).saveBase64(base64Data);
+        } else {
+            byte[] imageData = base64Codec.decode(base64Data);
+            log.d(LOG_IMAGE, "Base64解码完成，图像数据大小: " + imageData.length + "字节");
+            imagePath = outputSink.save(imageData);
+        }
+        log.d(LOG_API, "第 " + (savedImagePaths.size() + 1) + " 张图片生成成功，路径: " + imagePath);
+        if (listener != null) {
+            listener.onOutput(savedImagePaths.size(), imagePath);
+        }
+        savedImagePaths.add(imagePath);
+    }
+
+    private static boolean isCandidateCountRejected(GeminiException e) {
+        String message = e.getMessage();
+        return e.getStatusCode() == 400 && message != null && message.toLowerCase(Locale.US).contains("candidate");
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream is = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = is.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset < data.length) {
+                throw new IOException("文件读取不完整: " + file.getAbsolutePath());
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,87 @@
+package com.geminiimageapp.engine;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * 一次生成任务的参数，可以序列化到任务日志中
+ * API密钥不写入任务日志，从日志恢复的任务没有密钥，由调用方重新获取
+ */
+public class GenerationJob {
+    private final String jobId;
+    private final String apiKey;
+    private final String imageUri;
+    private final String prompt;
+    private final int numOutputs;
+    private final int maxRetries;
+    private final boolean bypassCache;
+
+    public GenerationJob(String jobId, String apiKey, String imageUri, String prompt,
+                         int numOutputs, int maxRetries, boolean bypassCache) {
+        this.jobId = jobId;
+        this.apiKey = apiKey;
+        this.imageUri = imageUri;
+        this.prompt = prompt;
+        this.numOutputs = numOutputs;
+        this.maxRetries = maxRetries;
+        this.bypassCache = bypassCache;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getImageUri() {
+        return imageUri;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public int getNumOutputs() {
+        return numOutputs;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 是否跳过响应缓存，需要新的生成结果时使用
+     */
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("jobId", jobId);
+        json.addProperty("imageUri", imageUri);
+        json.addProperty("prompt", prompt);
+        json.addProperty("numOutputs", numOutputs);
+        json.addProperty("maxRetries", maxRetries);
+        json.addProperty("bypassCache", bypassCache);
+        return json;
+    }
+
+    public static GenerationJob fromJson(JsonObject json) {
+        return new GenerationJob(
+                getString(json, "jobId"),
+                null,
+                getString(json, "imageUri"),
+                getString(json, "prompt"),
+                json.get("numOutputs").getAsInt(),
+                json.get("maxRetries").getAsInt(),
+                json.has("bypassCache") && json.get("bypassCache").getAsBoolean());
+    }
+
+    private static String getString(JsonObject json, String key) {
+        JsonElement value = json.get(key);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+}
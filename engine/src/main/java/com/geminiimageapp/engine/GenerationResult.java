@@ -0,0 +1,30 @@
+package com.geminiimageapp.engine;
+
+import java.util.List;
+
+/**
+ * 任务结果
+ */
+public class GenerationResult {
+    private final List<String> imagePaths;
+    private final boolean shared;
+
+    public GenerationResult(List<String> imagePaths, boolean shared) {
+        this.imagePaths = imagePaths;
+        this.shared = shared;
+    }
+
+    /**
+     * 成功生成的图片路径
+     */
+    public List<String> getImagePaths() {
+        return imagePaths;
+    }
+
+    /**
+     * 是否合并到了另一个进行中的相同任务，图片路径与那个任务共享
+     */
+    public boolean isShared() {
+        return shared;
+    }
+}
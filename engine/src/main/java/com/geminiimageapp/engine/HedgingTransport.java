@@ -0,0 +1,138 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 对冲请求：请求超过近期延迟的指定分位（例如p90）仍未返回时，再发一个相同的请求，
+ * 使用先成功返回的结果并取消另一个，减少偶发慢请求造成的长尾延迟
+ * 额外请求受预算限制：每个请求积累budgetRatio个额度，每次对冲消耗1个
+ * 应直接包装实际发送请求的传输（在限流和密钥池之下），否则本地排队等待的时间也会计入延迟和对冲计时
+ */
+public class HedgingTransport implements Transport {
+    // 额度最多积累这么多，避免长时间空闲后集中对冲
+    private static final double MAX_BUDGET = 5;
+
+    private final Transport delegate;
+    private final LatencyTracker latencyTracker;
+    private final double percentile;
+    private final double budgetRatio;
+    private final int minSamples;
+    private final EngineLog log;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hedging-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private double budget;
+
+    /**
+     * @param percentile 等待多久（延迟分位）后发出对冲请求
+     * @param budgetRatio 对冲请求占总请求数的比例上限
+     * @param minSamples 延迟样本少于这个数量时不对冲
+     */
+    public HedgingTransport(Transport delegate, LatencyTracker latencyTracker, double percentile, double budgetRatio,
+                            int minSamples, EngineLog log) {
+        this.delegate = delegate;
+        this.latencyTracker = latencyTracker;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.minSamples = minSamples;
+        this.log = log;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return delegate.getEndpoint();
+    }
+
+    @Override
+    public String send(String apiKey, String requestJson) throws GeminiException {
+        depositBudget();
+        long hedgeDelay = latencyTracker.getSampleCount() >= minSamples ? latencyTracker.percentile(percentile) : -1;
+        if (hedgeDelay < 0) {
+            return timedSend(apiKey, requestJson);
+        }
+
+        ExecutorCompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        List<Future<String>> attempts = new ArrayList<>();
+        attempts.add(completion.submit(() -> timedSend(apiKey, requestJson)));
+        try {
+            Future<String> first = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                return getResult(first);
+            }
+            if (!tryWithdrawBudget()) {
+                return getResult(completion.take());
+            }
+
+            log.i(LOG_API, "请求超过p" + Math.round(percentile * 100) + "延迟 " + hedgeDelay + "ms仍未返回，发出对冲请求");
+            attempts.add(completion.submit(() -> timedSend(apiKey, requestJson)));
+            GeminiException lastFailure = null;
+            for (int i = 0; i < attempts.size(); i++) {
+                Future<String> done = completion.take();
+                try {
+                    String response = getResult(done);
+                    log.d(LOG_API, (done == attempts.get(0) ? "原请求" : "对冲请求") + "先返回");
+                    return response;
+                } catch (GeminiException e) {
+                    lastFailure = e;
+                }
+            }
+            throw lastFailure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiException("等待API响应时被中断", e);
+        } finally {
+            // 取消尚未完成的请求，OkHttpTransport在线程中断时取消HTTP调用
+            for (Future<String> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private String timedSend(String apiKey, String requestJson) throws GeminiException {
+        long startTime = System.currentTimeMillis();
+        String response = delegate.send(apiKey, requestJson);
+        latencyTracker.record(System.currentTimeMillis() - startTime);
+        return response;
+    }
+
+    private static String getResult(Future<String> future) throws GeminiException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeminiException) {
+                throw (GeminiException) cause;
+            }
+            throw new GeminiException("调用Gemini API时出错: " + cause.getMessage(), cause);
+        }
+    }
+
+    private synchronized void depositBudget() {
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    private synchronized boolean tryWithdrawBudget() {
+        if (budget < 1) {
+            log.d(LOG_API, "对冲预算不足，继续等待原请求");
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+}
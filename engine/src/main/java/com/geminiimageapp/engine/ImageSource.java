@@ -0,0 +1,25 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 输入图片来源，Android端对应ContentResolver中的URI
+ */
+public interface ImageSource {
+
+    /**
+     * 打开图片数据流，每次调用都返回新的流，由调用方关闭
+     */
+    InputStream open() throws IOException;
+
+    /**
+     * 图片数据的字节长度，未知时返回-1
+     */
+    long length();
+
+    /**
+     * 用于日志的描述
+     */
+    String describe();
+}
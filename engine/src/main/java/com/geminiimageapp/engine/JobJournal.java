@@ -0,0 +1,233 @@
+package com.geminiimageapp.engine;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 任务日志（预写日志），记录任务参数、请求图片数据和已完成的输出
+ * 进程被杀死后，服务可以根据日志只补齐尚未完成的输出
+ */
+public class JobJournal {
+    private static final String JOB_FILE = "job.json";
+    private static final String PAYLOAD_FILE = "payload.b64";
+    private static final String OUTPUTS_FILE = "outputs.log";
+
+    private final Gson gson = new Gson();
+
+    private final String jobId;
+    private final File jobDir;
+    private final EngineLog log;
+    private JsonObject job;
+
+    private JobJournal(String jobId, File jobDir, EngineLog log) {
+        this.jobId = jobId;
+        this.jobDir = jobDir;
+        this.log = log;
+    }
+
+    /**
+     * 打开任务日志，不存在时不会创建任何文件
+     * @param journalRoot 所有任务日志所在的目录
+     */
+    public static JobJournal open(File journalRoot, String jobId, EngineLog log) {
+        JobJournal journal = new JobJournal(jobId, new File(journalRoot, jobId), log);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * 列出所有尚未完成的任务ID
+     */
+    public static List<String> listPendingJobIds(File journalRoot) {
+        List<String> jobIds = new ArrayList<>();
+        File[] jobDirs = journalRoot.listFiles();
+        if (jobDirs == null) {
+            return jobIds;
+        }
+        for (File jobDir : jobDirs) {
+            if (new File(jobDir, JOB_FILE).exists()) {
+                jobIds.add(jobDir.getName());
+            }
+        }
+        return jobIds;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * 日志中是否已记录任务参数
+     */
+    public boolean exists() {
+        return job != null;
+    }
+
+    /**
+     * 获取记录的任务参数
+     */
+    public JsonObject getParams() {
+        return job != null ? job.getAsJsonObject("params") : null;
+    }
+
+    /**
+     * 记录任务参数，任务开始处理前调用
+     */
+    public void writeParams(JsonObject params) throws IOException {
+        if (!jobDir.exists() && !jobDir.mkdirs()) {
+            throw new IOException("无法创建任务日志目录: " + jobDir.getAbsolutePath());
+        }
+        JsonObject newJob = new JsonObject();
+        newJob.addProperty("jobId", jobId);
+        newJob.addProperty("createdAt", System.currentTimeMillis());
+        newJob.add("params", params);
+        writeJob(newJob);
+        log.d(LOG_INIT, "任务日志已创建: " + jobId);
+    }
+
+    /**
+     * 保存准备好的请求图片数据，恢复任务时无需重新读取和压缩原图
+     */
+    public void writePayload(PreparedImage image) throws IOException {
+        File payloadFile = new File(jobDir, PAYLOAD_FILE);
+        writeFileAtomically(payloadFile, image.getBase64Data());
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("file", PAYLOAD_FILE);
+        payload.addProperty("mimeType", image.getMimeType());
+        payload.addProperty("passthrough", image.isPassthrough());
+        job.add("payload", payload);
+        writeJob(job);
+    }
+
+    /**
+     * 读取已保存的请求图片数据，没有记录时返回null
+     */
+    public PreparedImage readPayload() {
+        if (job == null || !job.has("payload")) {
+            return null;
+        }
+        JsonObject payload = job.getAsJsonObject("payload");
+        File payloadFile = new File(jobDir, payload.get("file").getAsString());
+        try {
+            String base64Data = readFile(payloadFile);
+            return new PreparedImage(payload.get("mimeType").getAsString(), base64Data,
+                    payload.get("passthrough").getAsBoolean());
+        } catch (IOException e) {
+            log.w(LOG_ERROR_TAG, "读取任务日志中的图片数据失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 追加一条已完成的输出路径，写入后立即同步到磁盘
+     */
+    public void recordOutput(String imagePath) {
+        try (FileOutputStream fos = new FileOutputStream(new File(jobDir, OUTPUTS_FILE), true)) {
+            fos.write((imagePath + "\n").getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        } catch (IOException e) {
+            log.w(LOG_ERROR_TAG, "记录任务输出失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取已完成且文件仍然存在的输出路径
+     */
+    public List<String> getCompletedOutputs() {
+        List<String> outputs = new ArrayList<>();
+        File outputsFile = new File(jobDir, OUTPUTS_FILE);
+        if (!outputsFile.exists()) {
+            return outputs;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(outputsFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 进程在写入过程中被杀死时，最后一行可能不完整，文件存在才算完成
+                if (!line.isEmpty() && new File(line).exists() && !outputs.contains(line)) {
+                    outputs.add(line);
+                }
+            }
+        } catch (IOException e) {
+            log.w(LOG_ERROR_TAG, "读取任务输出记录失败: " + e.getMessage());
+        }
+        return outputs;
+    }
+
+    /**
+     * 任务结束，删除日志
+     */
+    public void finish() {
+        File[] files = jobDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        jobDir.delete();
+        job = null;
+        log.d(LOG_INIT, "任务日志已删除: " + jobId);
+    }
+
+    private void load() {
+        File jobFile = new File(jobDir, JOB_FILE);
+        if (!jobFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(jobFile), StandardCharsets.UTF_8)) {
+            job = gson.fromJson(reader, JsonObject.class);
+        } catch (Exception e) {
+            log.e(LOG_ERROR_TAG, "读取任务日志失败: " + jobId, e);
+            job = null;
+        }
+    }
+
+    private void writeJob(JsonObject newJob) throws IOException {
+        writeFileAtomically(new File(jobDir, JOB_FILE), gson.toJson(newJob));
+        job = newJob;
+    }
+
+    /**
+     * 先写临时文件并同步，再重命名为目标文件，避免留下写了一半的文件
+     */
+    private static void writeFileAtomically(File file, String content) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            Writer writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
+            writer.write(content);
+            writer.flush();
+            fos.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("无法重命名任务日志文件: " + file.getAbsolutePath());
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringBuilder builder = new StringBuilder((int) file.length());
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 密钥池中没有可用的密钥（都无效，或冷却在等待上限内不会结束），请求没有发出
+ * 这是本地状态，不是端点的响应：路由不应因此换端点或记录端点失败，限流也不应因此降低并发
+ */
+public class KeyPoolExhaustedException extends GeminiException {
+    private static final long serialVersionUID = 1L;
+
+    public KeyPoolExhaustedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.geminiimageapp.engine;
+
+import java.util.Map;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 使用密钥池发送请求：每个请求由ApiKeyPool选择密钥，调用方传入的密钥不再使用
+ * 每个密钥有自己的传输（通常各自带有限流），一个密钥被限流不影响其他密钥；
+ * 返回429时立即换一个可用的密钥重发，流式请求只在还没有收到任何片段时重发
+ */
+public class KeyPoolTransport implements StreamingTransport {
+    private final ApiKeyPool pool;
+    private final Map<String, Transport> transports;
+    private final String endpoint;
+    private final EngineLog log;
+
+    /**
+     * @param transports 每个密钥使用的传输，必须包含池中的所有密钥，端点相同
+     */
+    public KeyPoolTransport(ApiKeyPool pool, Map<String, Transport> transports, EngineLog log) {
+        if (transports.isEmpty()) {
+            throw new IllegalArgumentException("密钥池为空");
+        }
+        this.pool = pool;
+        this.transports = transports;
+        this.endpoint = transports.values().iterator().next().getEndpoint();
+        this.log = log;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public String send(String apiKey, String requestJson) throws GeminiException {
+        return withKey((key, transport) -> transport.send(key, requestJson), () -> true);
+    }
+
+    @Override
+    public void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+        boolean[] received = new boolean[1];
+        withKey((key, transport) -> {
+            if (!(transport instanceof StreamingTransport)) {
+                throw new GeminiException("传输不支持流式请求: " + transport.getClass().getSimpleName());
+            }
+            ((StreamingTransport) transport).stream(key, requestJson, chunkJson -> {
+                received[0] = true;
+                handler.onChunk(chunkJson);
+            });
+            return null;
+        }, () -> !received[0]);
+    }
+
+    private interface KeyedRequest<T> {
+        T execute(String key, Transport transport) throws GeminiException;
+    }
+
+    private interface RetryCheck {
+        boolean canRetry();
+    }
+
+    private <T> T withKey(KeyedRequest<T> request, RetryCheck retryCheck) throws GeminiException {
+        String key = acquire(null);
+        while (true) {
+            Transport transport = transports.get(key);
+            if (transport == null) {
+                throw new GeminiException("密钥池中的密钥没有对应的传输: " + ApiKeyPool.mask(key));
+            }
+            try {
+                T response = request.execute(key, transport);
+                pool.report(key, 200, null);
+                return response;
+            } catch (GeminiException e) {
+                boolean cooledDown = pool.report(key, e.getStatusCode(), e.getMessage());
+                if (!cooledDown || Thread.currentThread().isInterrupted() || !retryCheck.canRetry()) {
+                    throw e;
+                }
+                String next = acquire(key);
+                if (next == null) {
+                    throw e;
+                }
+                log.i(LOG_API, "换用API密钥 " + ApiKeyPool.mask(next) + " 重发请求");
+                key = next;
+            }
+        }
+    }
+
+    private String acquire(String exclude) throws GeminiException {
+        try {
+            return pool.acquire(exclude);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiException("等待可用的API密钥时被中断", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.geminiimageapp.engine;
+
+import java.util.Arrays;
+
+/**
+ * 记录最近若干次成功请求的延迟，计算分位数
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    /**
+     * @param capacity 保留最近多少次的延迟
+     */
+    public LatencyTracker(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * @param p 分位，例如0.9
+     * @return 没有样本时返回-1
+     */
+    public synchronized long percentile(double p) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
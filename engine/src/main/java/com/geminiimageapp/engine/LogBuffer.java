@@ -0,0 +1,47 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 有容量上限的日志缓冲区，线程安全，超过上限时移除最旧的条目
+ */
+public class LogBuffer<E> {
+    private final CopyOnWriteArrayList<E> entries = new CopyOnWriteArrayList<>();
+    private final int capacity;
+
+    public LogBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * 添加条目
+     */
+    public void add(E entry) {
+        entries.add(entry);
+
+        // 如果数量超过最大值，移除最旧的条目
+        if (entries.size() > capacity) {
+            entries.remove(0);
+        }
+    }
+
+    /**
+     * 获取当前所有条目的快照
+     */
+    public List<E> snapshot() {
+        return new ArrayList<>(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 清除所有条目
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,33 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 按网络状况选择请求图片的规格：受限网络（按流量计费或上行较慢）上使用更小的尺寸和质量，
+ * 减少上传量和超时重试；其他情况使用正常规格
+ */
+public class NetworkAwarePayloadEncoder implements PayloadEncoder {
+    private final PayloadEncoder normal;
+    private final PayloadEncoder constrained;
+    private final NetworkGate networkGate;
+    private final EngineLog log;
+
+    public NetworkAwarePayloadEncoder(PayloadEncoder normal, PayloadEncoder constrained, NetworkGate networkGate,
+                                      EngineLog log) {
+        this.normal = normal;
+        this.constrained = constrained;
+        this.networkGate = networkGate;
+        this.log = log;
+    }
+
+    @Override
+    public PreparedImage encode(ImageSource source) throws IOException {
+        if (networkGate.isConstrained()) {
+            log.d(LOG_IMAGE, "当前为受限网络，使用较小的图片规格");
+            return constrained.encode(source);
+        }
+        return normal.encode(source);
+    }
+}
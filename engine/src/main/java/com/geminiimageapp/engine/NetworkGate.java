@@ -0,0 +1,102 @@
+package com.geminiimageapp.engine;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 网络状态闸门：平台层在网络变化时调用update，请求前调用awaitReady
+ * 没有网络时请求排队等待，网络恢复后自动继续，不在超时上浪费重试次数；
+ * 按流量计费或上行带宽较低的网络视为受限网络，可以选择更小的请求图片，也可以配置为等待不计费的网络
+ */
+public class NetworkGate {
+    /**
+     * 开始等待网络时的回调，用于更新通知等界面
+     */
+    public interface Listener {
+        void onWaiting(String reason);
+    }
+
+    private final int slowUpstreamKbps;
+    private final boolean deferOnMetered;
+    private final long maxWaitMillis;
+    private final EngineLog log;
+    private volatile Listener listener;
+
+    // 平台层尚未报告时按网络可用处理，不影响原有行为
+    private boolean connected = true;
+    private boolean metered;
+    private int upstreamKbps = -1;
+
+    /**
+     * @param slowUpstreamKbps 上行带宽低于此值时视为受限网络，0表示不按带宽判断
+     * @param deferOnMetered 按流量计费的网络上是否等待不计费的网络
+     * @param maxWaitMillis 最长等待时间，超时后仍然发送请求
+     */
+    public NetworkGate(int slowUpstreamKbps, boolean deferOnMetered, long maxWaitMillis, EngineLog log) {
+        this.slowUpstreamKbps = slowUpstreamKbps;
+        this.deferOnMetered = deferOnMetered;
+        this.maxWaitMillis = maxWaitMillis;
+        this.log = log;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 更新网络状态，唤醒等待中的请求
+     * @param upstreamKbps 上行带宽估计，未知时传-1
+     */
+    public synchronized void update(boolean connected, boolean metered, int upstreamKbps) {
+        if (connected != this.connected || metered != this.metered) {
+            log.i(LOG_API, "网络状态变化: " + (connected ? (metered ? "已连接（按流量计费）" : "已连接") : "无网络")
+                    + (connected && upstreamKbps > 0 ? "，上行带宽约 " + upstreamKbps + "kbps" : ""));
+        }
+        this.connected = connected;
+        this.metered = metered;
+        this.upstreamKbps = upstreamKbps;
+        notifyAll();
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 当前是否是受限网络（按流量计费或上行带宽低），此时应上传更小的图片
+     */
+    public synchronized boolean isConstrained() {
+        return connected && (metered || (slowUpstreamKbps > 0 && upstreamKbps > 0 && upstreamKbps < slowUpstreamKbps));
+    }
+
+    /**
+     * 等待可以发送请求：有网络连接，且配置了等待不计费网络时当前网络不计费
+     * @return 可以发送时返回true，等待超时返回false（调用方仍可尝试发送）
+     */
+    public synchronized boolean awaitReady() throws InterruptedException {
+        if (isReady()) {
+            return true;
+        }
+        String reason = !connected ? "等待网络连接..." : "等待不计费的网络...";
+        log.i(LOG_API, reason + "（最长 " + maxWaitMillis / 1000 + " 秒）");
+        Listener current = listener;
+        if (current != null) {
+            current.onWaiting(reason);
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + maxWaitMillis;
+        while (!isReady()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.w(LOG_API, "等待网络超时，继续发送请求");
+                return false;
+            }
+            wait(remaining);
+        }
+        log.i(LOG_API, "网络已恢复，等待了 " + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    private boolean isReady() {
+        return connected && !(deferOnMetered && metered);
+    }
+}
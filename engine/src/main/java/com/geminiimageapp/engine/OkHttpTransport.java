@@ -0,0 +1,395 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Utf8;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 基于OkHttp的传输实现
+ * 可选用gzip压缩请求体（Base64图片数据压缩效果明显），端点返回415或指向编码的400时自动改为不压缩；
+ * 响应由OkHttp透明协商gzip并解压
+ * 也支持流式端点streamGenerateContent（SSE），逐个读取事件并交给调用方处理
+ */
+public class OkHttpTransport implements StreamingTransport {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient client;
+    private final String url;
+    // 对应的流式端点，端点不是generateContent时为null
+    private final String streamUrl;
+    private final EngineLog log;
+    private final TransferStats stats = new TransferStats();
+
+    // 是否压缩请求体，端点不接受时关闭
+    private volatile boolean requestCompression;
+    // 已经确认端点接受压缩的请求体（压缩的请求成功过，或不压缩重发也同样失败），之后的400不再怀疑压缩
+    private volatile boolean compressionAccepted;
+
+    public OkHttpTransport(OkHttpClient client, String url, EngineLog log) {
+        this.client = client;
+        this.url = url;
+        this.log = log;
+        this.streamUrl = url.contains(":generateContent")
+                ? url.replace(":generateContent", ":streamGenerateContent") + (url.contains("?") ? "&" : "?") + "alt=sse"
+                : null;
+    }
+
+    /**
+     * 使用gzip压缩请求体
+     */
+    public void setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+    }
+
+    public TransferStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return url;
+    }
+
+    @Override
+    public String send(String apiKey, String requestJson) throws GeminiException {
+        if (!requestCompression) {
+            return send(apiKey, requestJson, false);
+        }
+        String response;
+        try {
+            response = send(apiKey, requestJson, true);
+        } catch (GeminiException e) {
+            if (!isCompressionRejected(e)) {
+                throw e;
+            }
+            // 可能是端点不接受压缩的请求体，不压缩重发一次确认
+            log.w(LOG_API, "压缩的请求被拒绝（" + e.getStatusCode() + "），不压缩重试");
+            try {
+                response = send(apiKey, requestJson, false);
+            } catch (GeminiException retryError) {
+                onUncompressedRetryFailed(e, retryError);
+                throw retryError;
+            }
+            onCompressionRejected();
+            return response;
+        }
+        compressionAccepted = true;
+        return response;
+    }
+
+    @Override
+    public void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+        if (streamUrl == null) {
+            throw new GeminiException("端点不是generateContent，无法使用流式请求: " + url);
+        }
+        if (!requestCompression) {
+            stream(apiKey, requestJson, handler, false);
+            return;
+        }
+        try {
+            stream(apiKey, requestJson, handler, true);
+        } catch (GeminiException e) {
+            // HTTP错误在读取任何片段之前发生，可以安全地重发
+            if (!isCompressionRejected(e)) {
+                throw e;
+            }
+            log.w(LOG_API, "压缩的请求被拒绝（" + e.getStatusCode() + "），不压缩重试");
+            try {
+                stream(apiKey, requestJson, handler, false);
+            } catch (GeminiException retryError) {
+                onUncompressedRetryFailed(e, retryError);
+                throw retryError;
+            }
+            onCompressionRejected();
+            return;
+        }
+        compressionAccepted = true;
+    }
+
+    /**
+     * 压缩的请求失败是否可能是因为端点不接受压缩的请求体
+     * 只有415和错误信息指向编码的400才算：普通的400（提示词问题、不支持的参数等）不压缩重发也一样失败，
+     * 还要多上传一次完整的请求体
+     */
+    private boolean isCompressionRejected(GeminiException e) {
+        if (compressionAccepted) {
+            return false;
+        }
+        if (e.getStatusCode() == 415) {
+            return true;
+        }
+        if (e.getStatusCode() != 400 || e.getMessage() == null) {
+            return false;
+        }
+        // 端点忽略Content-Encoding时，按JSON解析压缩数据会报Invalid JSON payload
+        String message = e.getMessage().toLowerCase(Locale.ROOT);
+        return message.contains("gzip") || message.contains("encoding") || message.contains("invalid json payload");
+    }
+
+    private void onCompressionRejected() {
+        requestCompression = false;
+        stats.recordFallback();
+        log.w(LOG_API, "端点不接受gzip压缩的请求体，之后的请求不再压缩");
+    }
+
+    /**
+     * 不压缩重发返回了同样的状态码，失败与压缩无关，之后不再为此重发
+     */
+    private void onUncompressedRetryFailed(GeminiException original, GeminiException retryError) {
+        if (retryError.getStatusCode() == original.getStatusCode()) {
+            compressionAccepted = true;
+            log.w(LOG_API, "不压缩重发同样失败（" + retryError.getStatusCode() + "），失败与压缩无关，继续压缩请求体");
+        }
+    }
+
+    private String send(String apiKey, String requestJson, boolean compress) throws GeminiException {
+        log.d(LOG_API, "准备调用Gemini API: " + url);
+
+        // 请求体
+        long requestBytes = Utf8.size(requestJson);
+        GzipRequestBody gzipBody = compress ? new GzipRequestBody(requestJson) : null;
+        Request request = buildRequest(url, apiKey, compress ? gzipBody : RequestBody.create(requestJson, JSON), compress);
+
+        log.d(LOG_API, "发送API请求" + (compress ? "（gzip压缩）" : ""));
+        long startTime = System.currentTimeMillis();
+
+        // 异步执行并在当前线程等待，线程被中断时取消请求（对冲请求取消较慢的一个时需要）
+        Call call = client.newCall(request);
+        PendingResponse pending = new PendingResponse();
+        call.enqueue(pending);
+        try {
+            pending.await();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+            throw new GeminiException("API请求已取消", e);
+        }
+        if (pending.failure != null) {
+            throw new GeminiException("调用Gemini API时出错: " + pending.failure.getMessage(), pending.failure);
+        }
+
+        long requestWireBytes = compress ? gzipBody.compressedBytes : requestBytes;
+        stats.recordRequest(requestBytes, requestWireBytes, compress);
+        if (compress) {
+            log.d(LOG_API, "请求体压缩: " + requestBytes + " → " + requestWireBytes + "字节（"
+                    + (requestBytes > 0 ? requestWireBytes * 100 / requestBytes : 100) + "%）");
+        }
+
+        long endTime = System.currentTimeMillis();
+        log.d(LOG_API, "API请求完成，耗时: " + (endTime - startTime) + "ms，状态码: " + pending.code);
+
+        if (pending.code < 200 || pending.code >= 300) {
+            throw new GeminiException("API请求失败: " + pending.code + " " + pending.message
+                    + ", 错误详情: " + pending.body, pending.code);
+        }
+
+        long responseBytes = Utf8.size(pending.body);
+        stats.recordResponse(responseBytes, pending.wireBytes > 0 ? pending.wireBytes : responseBytes,
+                pending.compressed);
+        log.d(LOG_API, "API响应接收完成，响应体长度: " + pending.body.length() + "字符"
+                + (pending.compressed ? "，传输大小: " + pending.wireBytes + "字节（gzip）" : ""));
+        return pending.body;
+    }
+
+    /**
+     * 在当前线程中读取SSE事件，每个事件的data交给handler
+     * 图片片段是一行很长的data，只保留当前事件，不缓存完整的响应
+     */
+    private void stream(String apiKey, String requestJson, ChunkHandler handler, boolean compress) throws GeminiException {
+        log.d(LOG_API, "准备调用Gemini流式API: " + streamUrl);
+
+        long requestBytes = Utf8.size(requestJson);
+        GzipRequestBody gzipBody = compress ? new GzipRequestBody(requestJson) : null;
+        Request request = buildRequest(streamUrl, apiKey, compress ? gzipBody : RequestBody.create(requestJson, JSON), compress)
+                .newBuilder()
+                .addHeader("Accept", "text/event-stream")
+                .build();
+
+        log.d(LOG_API, "发送流式API请求" + (compress ? "（gzip压缩）" : ""));
+        long startTime = System.currentTimeMillis();
+        Call call = client.newCall(request);
+        try (Response response = call.execute()) {
+            stats.recordRequest(requestBytes, compress ? gzipBody.compressedBytes : requestBytes, compress);
+            if (!response.isSuccessful()) {
+                String errorBody = response.body() != null ? response.body().string() : "No error body";
+                throw new GeminiException("API请求失败: " + response.code() + " " + response.message()
+                        + ", 错误详情: " + errorBody, response.code());
+            }
+            log.d(LOG_API, "流式响应开始，耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+            Response networkResponse = response.networkResponse();
+            boolean compressed = networkResponse != null
+                    && "gzip".equalsIgnoreCase(networkResponse.header("Content-Encoding"));
+
+            BufferedSource source = response.body().source();
+            List<String> dataLines = new ArrayList<>();
+            long responseBytes = 0;
+            int chunks = 0;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    call.cancel();
+                    throw new GeminiException("API请求已取消");
+                }
+                responseBytes += Utf8.size(line) + 1;
+                if (line.isEmpty()) {
+                    // 空行表示一个事件结束
+                    if (!dataLines.isEmpty()) {
+                        chunks++;
+                        handler.onChunk(joinData(dataLines));
+                        dataLines.clear();
+                    }
+                } else if (line.startsWith("data:")) {
+                    dataLines.add(line.substring(line.startsWith("data: ") ? 6 : 5));
+                }
+                // event、id和注释行不使用
+            }
+            if (!dataLines.isEmpty()) {
+                chunks++;
+                handler.onChunk(joinData(dataLines));
+            }
+
+            stats.recordResponse(responseBytes, responseBytes, compressed);
+            log.d(LOG_API, "流式响应接收完成，片段数: " + chunks + "，总耗时: "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new GeminiException("API请求已取消", e);
+            }
+            throw new GeminiException("调用Gemini API时出错: " + e.getMessage(), e);
+        }
+    }
+
+    private static String joinData(List<String> dataLines) {
+        if (dataLines.size() == 1) {
+            return dataLines.get(0);
+        }
+        StringBuilder data = new StringBuilder();
+        for (String dataLine : dataLines) {
+            if (data.length() > 0) {
+                data.append('\n');
+            }
+            data.append(dataLine);
+        }
+        return data.toString();
+    }
+
+    private static Request buildRequest(String url, String apiKey, RequestBody body, boolean compress) {
+        // 注意这里 API key 放在Header中
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .post(body)
+                .addHeader("x-goog-api-key", apiKey)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("User-Agent", "GeminiImageApp/1.0");
+        if (compress) {
+            builder.addHeader("Content-Encoding", "gzip");
+        }
+        return builder.build();
+    }
+
+    /**
+     * 边写边压缩的请求体，长度未知，使用分块传输
+     */
+    private static class GzipRequestBody extends RequestBody {
+        private final String json;
+        volatile long compressedBytes;
+
+        GzipRequestBody(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // 连接失败重发时会再次写入，只保留最后一次的大小
+            long[] written = new long[1];
+            BufferedSink gzipSink = Okio.buffer(new GzipSink(new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    written[0] += byteCount;
+                    super.write(source, byteCount);
+                }
+            }));
+            gzipSink.writeUtf8(json);
+            gzipSink.close();
+            compressedBytes = written[0];
+        }
+    }
+
+    /**
+     * 在OkHttp线程中读取完整的响应，调用方线程只等待结果
+     */
+    private static class PendingResponse implements Callback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        int code;
+        String message;
+        String body;
+        // 响应在网络上的大小，服务端未提供Content-Length时为-1
+        long wireBytes = -1;
+        boolean compressed;
+        IOException failure;
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try (Response r = response) {
+                code = r.code();
+                message = r.message();
+                // OkHttp透明解压后会去掉Content-Encoding，原始的头在networkResponse中
+                Response networkResponse = r.networkResponse();
+                if (networkResponse != null) {
+                    compressed = "gzip".equalsIgnoreCase(networkResponse.header("Content-Encoding"));
+                    String contentLength = networkResponse.header("Content-Length");
+                    if (contentLength != null) {
+                        try {
+                            wireBytes = Long.parseLong(contentLength);
+                        } catch (NumberFormatException ignored) {
+                        }
+                    }
+                }
+                body = r.body() != null ? r.body().string() : "No error body";
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            failure = e;
+            done.countDown();
+        }
+    }
+}
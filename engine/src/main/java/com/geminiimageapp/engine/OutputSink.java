@@ -0,0 +1,16 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+
+/**
+ * 生成结果的输出接口
+ */
+public interface OutputSink {
+
+    /**
+     * 保存一张生成的图片
+     * @param imageData 解码后的图像数据
+     * @return 保存后的路径
+     */
+    String save(byte[] imageData) throws IOException;
+}
@@ -0,0 +1,208 @@
+package com.geminiimageapp.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 输出目录管理：按日期分子目录保存，记录总大小，超过配额时在后台按LRU淘汰
+ * 目录中的文件只在启动时扫描一次（后台进行），之后保存和访问时增量更新，
+ * 统计信息不需要再列目录
+ */
+public class OutputStorage {
+    // 淘汰到配额的这个比例以下，避免每保存一张就淘汰一次
+    private static final double EVICT_TARGET_RATIO = 0.9;
+    // 超过这个时间的临时文件是崩溃或取消时遗留的，扫描时删除
+    private static final long STALE_TEMP_MILLIS = 10 * 60 * 1000;
+
+    private final File rootDir;
+    private final long quotaBytes;
+    private final EngineLog log;
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OutputStorage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 路径到文件大小，按访问顺序排列，最前面的最久未访问
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    // 已确认存在的日期子目录
+    private final Set<String> knownShards = new HashSet<>();
+    private long totalBytes;
+    private boolean evictionScheduled;
+
+    /**
+     * @param quotaBytes 输出目录总大小上限，0表示不限制
+     */
+    public OutputStorage(File rootDir, long quotaBytes, EngineLog log) {
+        this.rootDir = rootDir;
+        this.quotaBytes = quotaBytes;
+        this.log = log;
+        background.execute(this::buildIndex);
+    }
+
+    /**
+     * 今天的子目录，不存在时创建
+     */
+    public File shardDir() throws IOException {
+        String shard = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date());
+        File dir = new File(rootDir, shard);
+        synchronized (this) {
+            if (knownShards.contains(shard)) {
+                return dir;
+            }
+        }
+        // 批量任务会并发保存，目录可能已被其他线程创建
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("无法创建存储目录: " + dir.getAbsolutePath());
+        }
+        log.d(LOG_IMAGE, "存储目录: " + dir.getAbsolutePath());
+        synchronized (this) {
+            knownShards.add(shard);
+        }
+        return dir;
+    }
+
+    /**
+     * 记录新保存的文件，超过配额时安排后台淘汰
+     */
+    public synchronized void recordAdded(File file) {
+        Long previous = files.put(file.getAbsolutePath(), file.length());
+        totalBytes += file.length() - (previous != null ? previous : 0);
+        scheduleEvictionIfNeeded();
+    }
+
+    /**
+     * 记录文件被访问（例如被查看），淘汰时最后考虑
+     */
+    public synchronized void recordAccess(String path) {
+        files.get(path);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    public void shutdown() {
+        background.shutdownNow();
+    }
+
+    /**
+     * 扫描已有的文件（包括分目录之前直接保存在根目录中的），按修改时间作为最近访问时间
+     */
+    private void buildIndex() {
+        long start = System.currentTimeMillis();
+        List<File> found = new ArrayList<>();
+        File[] entries = rootDir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    File[] shardFiles = entry.listFiles();
+                    if (shardFiles != null) {
+                        Collections.addAll(found, shardFiles);
+                    }
+                } else {
+                    found.add(entry);
+                }
+            }
+        }
+        Map<File, Long> modified = new HashMap<>();
+        Iterator<File> iterator = found.iterator();
+        while (iterator.hasNext()) {
+            File file = iterator.next();
+            long lastModified = file.lastModified();
+            if (FileOutputSink.isTempFile(file)) {
+                iterator.remove();
+                if (start - lastModified > STALE_TEMP_MILLIS && file.delete()) {
+                    log.d(LOG_INIT, "删除未完成写入的临时文件: " + file.getName());
+                }
+                continue;
+            }
+            modified.put(file, lastModified);
+        }
+        Collections.sort(found, (a, b) -> Long.compare(modified.get(a), modified.get(b)));
+
+        synchronized (this) {
+            // 扫描期间新保存的文件比已有的都新，排在后面
+            LinkedHashMap<String, Long> added = new LinkedHashMap<>(files);
+            files.clear();
+            totalBytes = 0;
+            for (File file : found) {
+                long length = file.length();
+                files.put(file.getAbsolutePath(), length);
+                totalBytes += length;
+            }
+            for (Map.Entry<String, Long> entry : added.entrySet()) {
+                Long previous = files.put(entry.getKey(), entry.getValue());
+                totalBytes += entry.getValue() - (previous != null ? previous : 0);
+            }
+            log.d(LOG_INIT, "输出目录索引完成，文件数: " + files.size() + "，总大小: " + totalBytes
+                    + "字节，耗时: " + (System.currentTimeMillis() - start) + "ms");
+            scheduleEvictionIfNeeded();
+        }
+    }
+
+    private void scheduleEvictionIfNeeded() {
+        if (quotaBytes > 0 && totalBytes > quotaBytes && !evictionScheduled) {
+            evictionScheduled = true;
+            background.execute(this::evict);
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的文件，直到总大小低于配额的目标比例
+     */
+    private void evict() {
+        List<String> victims = new ArrayList<>();
+        long target = (long) (quotaBytes * EVICT_TARGET_RATIO);
+        synchronized (this) {
+            evictionScheduled = false;
+            Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+            while (totalBytes > target && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                victims.add(entry.getKey());
+                totalBytes -= entry.getValue();
+                iterator.remove();
+            }
+        }
+
+        String today = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date());
+        Set<File> parents = new HashSet<>();
+        for (String path : victims) {
+            File file = new File(path);
+            if (!file.delete() && file.exists()) {
+                log.w(LOG_ERROR_TAG, "删除输出文件失败: " + path);
+            }
+            parents.add(file.getParentFile());
+        }
+        // 删除已清空的日期子目录，今天的目录保留，避免和正在进行的保存冲突
+        for (File parent : parents) {
+            if (!parent.equals(rootDir) && !parent.getName().equals(today) && parent.delete()) {
+                synchronized (this) {
+                    knownShards.remove(parent.getName());
+                }
+            }
+        }
+        log.d(LOG_PROCESS, "输出目录超过配额 " + quotaBytes + "字节，淘汰 " + victims.size()
+                + " 个文件，剩余大小: " + getTotalBytes() + "字节");
+    }
+}
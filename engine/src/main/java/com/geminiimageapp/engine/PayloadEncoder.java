@@ -0,0 +1,15 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+
+/**
+ * 把输入图片转换为请求使用的数据（格式检查、缩放、压缩和Base64编码）
+ */
+public interface PayloadEncoder {
+
+    /**
+     * @return 准备好的请求图片数据
+     * @throws IOException 图片无法读取或解码
+     */
+    PreparedImage encode(ImageSource source) throws IOException;
+}
@@ -0,0 +1,137 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 排队任务的图片预先准备：任务一提交就在CPU线程中开始解码、压缩和编码，
+ * 前一个任务还在等待网络响应时，下一个任务的图片数据已经准备好
+ * 预先准备的数量有上限，超出的任务排队，取走一份后再开始准备下一份
+ */
+public class PayloadPrefetcher {
+    private final PayloadEncoder payloadEncoder;
+    private final int maxPrepared;
+    private final EngineLog log;
+    private final ExecutorService cpuExecutor;
+
+    // 已开始准备的任务（正在准备或已准备好），以及等待空位的任务，都按提交顺序
+    private final Map<String, FutureTask<PreparedImage>> started = new HashMap<>();
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+
+    private static class Pending {
+        final String key;
+        final ImageSource source;
+
+        Pending(String key, ImageSource source) {
+            this.key = key;
+            this.source = source;
+        }
+    }
+
+    /**
+     * @param threads 准备图片数据的线程数
+     * @param maxPrepared 最多预先准备多少份图片数据
+     */
+    public PayloadPrefetcher(PayloadEncoder payloadEncoder, int threads, int maxPrepared, EngineLog log) {
+        this.payloadEncoder = payloadEncoder;
+        this.maxPrepared = Math.max(1, maxPrepared);
+        this.log = log;
+        this.cpuExecutor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * 提交一个任务的图片，立即返回
+     */
+    public synchronized void submit(String key, ImageSource source) {
+        if (started.containsKey(key)) {
+            return;
+        }
+        if (started.size() < maxPrepared) {
+            start(key, source);
+        } else {
+            waiting.add(new Pending(key, source));
+            log.d(LOG_IMAGE, "预先准备的图片已达上限 " + maxPrepared + " 份，任务排队: " + key);
+        }
+    }
+
+    /**
+     * 取出任务的图片数据，尚未准备好时等待，没有提交过时在当前线程中准备
+     */
+    public PreparedImage take(String key, ImageSource source) throws IOException, InterruptedException {
+        FutureTask<PreparedImage> task;
+        synchronized (this) {
+            task = started.remove(key);
+            removeWaiting(key);
+            startNext();
+        }
+        if (task == null) {
+            return payloadEncoder.encode(source);
+        }
+        try {
+            PreparedImage image = task.get();
+            log.d(LOG_IMAGE, "使用预先准备的图片数据: " + key);
+            return image;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("准备图片数据失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 丢弃不再需要的任务（例如参数校验失败），释放它占用的位置
+     */
+    public synchronized void discard(String key) {
+        FutureTask<PreparedImage> task = started.remove(key);
+        if (task != null) {
+            task.cancel(false);
+        }
+        removeWaiting(key);
+        startNext();
+    }
+
+    public synchronized void shutdown() {
+        for (FutureTask<PreparedImage> task : started.values()) {
+            task.cancel(true);
+        }
+        started.clear();
+        waiting.clear();
+        cpuExecutor.shutdownNow();
+    }
+
+    private void start(String key, ImageSource source) {
+        FutureTask<PreparedImage> task = new FutureTask<>(() -> {
+            log.d(LOG_IMAGE, "开始预先准备图片: " + source.describe());
+            return payloadEncoder.encode(source);
+        });
+        started.put(key, task);
+        cpuExecutor.execute(task);
+    }
+
+    private void startNext() {
+        while (started.size() < maxPrepared && !waiting.isEmpty()) {
+            Pending next = waiting.poll();
+            start(next.key, next.source);
+        }
+    }
+
+    private void removeWaiting(String key) {
+        Iterator<Pending> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().key.equals(key)) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 准备好的请求图片数据，包含MIME类型和Base64编码内容
+ */
+public class PreparedImage {
+    private final String mimeType;
+    private final String base64Data;
+    private final boolean passthrough;
+    
+    public PreparedImage(String mimeType, String base64Data, boolean passthrough) {
+        this.mimeType = mimeType;
+        this.base64Data = base64Data;
+        this.passthrough = passthrough;
+    }
+    
+    public String getMimeType() {
+        return mimeType;
+    }
+    
+    public String getBase64Data() {
+        return base64Data;
+    }
+    
+    /**
+     * 是否为未经解码、重新压缩的原始文件字节
+     */
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+}
@@ -0,0 +1,103 @@
+package com.geminiimageapp.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 提示词构建，将模板中的占位符替换为任务参数
+ * 模板预先编译为PromptTemplate，配置中的命名模板一次编译，之后每个任务只需一次遍历生成提示词
+ */
+public final class PromptBuilder {
+
+    /**
+     * 配置文件中没有提示词模板时使用的默认模板
+     */
+    public static final String DEFAULT_TEMPLATE = "一张顶级专业cosplay摄影作品。主角是一位顶尖的中国女coser，她拥有姣好的面郎，化着淡妆，挺翘的鼻子，美瞳，化妆，白皮肤，{lolication}，光滑细腻的肌肤，情趣吊带袜，情趣蕾丝胸罩。她通过极其精致的妆容和神态表演，完美还原了图片主体的气质、发型和标志性表情。身材和图片一致。{bodyInfo}。头发发质自然。她完整地穿着图片中的服装。{pos}。服装材质表现出极高的真实感，有清晰的布料纹理、皮革光泽、丝袜质感和自然褶皱。年龄一致。\n完全重塑图片光影及质感。场景位于{scene}中。明亮丰富打光，光照细节丰富。\n最终画面要求顶级相机拍摄，RAW照片质感，皮肤纹理真实细腻，光影层次丰富。\n绝对禁止出现任何二次元、卡通、3D模型或绘画元素，确保最终结果是100%逼真的真人摄影作品，尤其是面部一定是真人的面部，禁止出现任何二次元、卡通、3D模型或绘画元素面部。\n生成时请思考画面是否真实？生成的coser是否和真人一样？如果不一样应该怎么办？";
+
+    /**
+     * 模板中可以使用的占位符，render的参数按此顺序传入
+     */
+    public static final List<String> SLOTS = Collections.unmodifiableList(
+            Arrays.asList("scene", "lolication", "bodyInfo", "pos"));
+
+    public static final String DEFAULT_NAME = "default";
+
+    private static final PromptTemplate BUILTIN = PromptTemplate.compile("builtin", DEFAULT_TEMPLATE, SLOTS);
+
+    // 最近一次按模板文本编译的结果，build()连续使用同一模板时不重复编译
+    private static volatile PromptTemplate lastCompiled;
+
+    private PromptBuilder() {
+    }
+
+    /**
+     * 编译配置中的所有命名模板，有未知占位符的模板记录错误后跳过
+     * @param templates 模板名称到模板文本
+     * @return 模板名称到编译结果，保持配置中的顺序
+     */
+    public static Map<String, PromptTemplate> compileAll(Map<String, String> templates, EngineLog log) {
+        Map<String, PromptTemplate> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : templates.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            try {
+                compiled.put(entry.getKey(), PromptTemplate.compile(entry.getKey(), entry.getValue(), SLOTS));
+            } catch (IllegalArgumentException e) {
+                log.e(LOG_ERROR_TAG, e.getMessage() + "，忽略该模板");
+            }
+        }
+        log.d(LOG_PARAMS, "提示词模板编译完成: " + compiled.keySet());
+        return compiled;
+    }
+
+    /**
+     * 按名称选择模板：找不到时使用default模板，配置中也没有时使用内置的默认模板
+     */
+    public static PromptTemplate select(Map<String, PromptTemplate> templates, String name) {
+        PromptTemplate template = name != null ? templates.get(name) : null;
+        if (template == null) {
+            template = templates.get(DEFAULT_NAME);
+        }
+        return template != null ? template : BUILTIN;
+    }
+
+    /**
+     * 构建提示词
+     * @param promptTemplate 提示词模板，为空时使用默认模板
+     * @param scene 场景
+     * @param lolication 胸部描述
+     * @param bodyInfo 身体信息
+     * @param pos 姿势
+     * @return 构建好的提示词
+     * @throws IllegalArgumentException 模板中有未知的占位符
+     */
+    public static String build(String promptTemplate, String scene, String lolication, String bodyInfo, String pos) {
+        return render(compileCached(promptTemplate), scene, lolication, bodyInfo, pos);
+    }
+
+    /**
+     * 使用已编译的模板构建提示词
+     */
+    public static String render(PromptTemplate template, String scene, String lolication, String bodyInfo, String pos) {
+        return template.render(scene, lolication, bodyInfo, pos);
+    }
+
+    private static PromptTemplate compileCached(String promptTemplate) {
+        if (promptTemplate == null || promptTemplate.isEmpty()) {
+            return BUILTIN;
+        }
+        PromptTemplate compiled = lastCompiled;
+        if (compiled != null && promptTemplate.equals(compiled.getSource())) {
+            return compiled;
+        }
+        compiled = PromptTemplate.compile("custom", promptTemplate, SLOTS);
+        lastCompiled = compiled;
+        return compiled;
+    }
+}
@@ -0,0 +1,125 @@
+package com.geminiimageapp.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预先编译的提示词模板：模板文本拆分为固定文本和占位符交替的片段，
+ * 生成提示词时一次遍历写入按最终长度预先分配的StringBuilder，不再逐个占位符替换整个字符串
+ * 占位符形如 {name}，名称必须在编译时给定的列表中；花括号中不是标识符的内容按普通文本处理
+ */
+public final class PromptTemplate {
+    private final String name;
+    private final String source;
+    private final List<String> slotNames;
+    // literals比slots多一个：literals[0] slots[0] literals[1] ... slots[n-1] literals[n]
+    private final String[] literals;
+    private final int[] slots;
+    private final int literalLength;
+
+    private PromptTemplate(String name, String source, List<String> slotNames, String[] literals, int[] slots) {
+        this.name = name;
+        this.source = source;
+        this.slotNames = slotNames;
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 编译模板
+     * @param name 模板名称，用于错误信息
+     * @param slotNames 允许的占位符名称，render的参数按此顺序传入
+     * @throws IllegalArgumentException 模板中有未知的占位符
+     */
+    public static PromptTemplate compile(String name, String template, List<String> slotNames) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int literalStart = 0;
+        int pos = 0;
+        while ((pos = template.indexOf('{', pos)) >= 0) {
+            int end = template.indexOf('}', pos + 1);
+            if (end < 0) {
+                break;
+            }
+            String slotName = template.substring(pos + 1, end);
+            if (!isIdentifier(slotName)) {
+                pos++;
+                continue;
+            }
+            int slot = slotNames.indexOf(slotName);
+            if (slot < 0) {
+                throw new IllegalArgumentException("提示词模板 " + name + " 中有未知的占位符: {" + slotName + "}，可用的占位符: "
+                        + slotNames);
+            }
+            literals.add(template.substring(literalStart, pos));
+            slots.add(slot);
+            pos = end + 1;
+            literalStart = pos;
+        }
+        literals.add(template.substring(literalStart));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new PromptTemplate(name, template, new ArrayList<>(slotNames), literals.toArray(new String[0]), slotArray);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 编译前的模板文本
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 生成提示词
+     * @param values 占位符的值，顺序与编译时的slotNames一致，null按空字符串处理
+     */
+    public String render(String... values) {
+        if (values.length != slotNames.size()) {
+            throw new IllegalArgumentException("提示词模板 " + name + " 需要 " + slotNames.size() + " 个参数，实际为 " + values.length);
+        }
+        int length = literalLength;
+        for (int slot : slots) {
+            String value = values[slot];
+            length += value == null ? 0 : value.length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = values[slots[i]];
+            if (value != null) {
+                sb.append(value);
+            }
+            sb.append(literals[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 只有ASCII标识符算作占位符，模板正文中花括号括起的中文等内容保持原样
+     */
+    private static boolean isIdentifier(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+            if (!letter && !(i > 0 && c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package com.geminiimageapp.engine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 请求摘要，用于识别内容相同的请求
+ */
+public final class RequestDigest {
+
+    private RequestDigest() {
+    }
+
+    /**
+     * 计算多个字符串拼接后的SHA-256摘要（十六进制）
+     */
+    public static String of(String... parts) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                messageDigest.update((part == null ? "" : part).getBytes(StandardCharsets.UTF_8));
+                // 分隔符避免不同的拆分方式得到相同的摘要
+                messageDigest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : messageDigest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.geminiimageapp.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * API响应缓存，按请求摘要保存解码后的输出图片
+ * 每个摘要对应一个目录，目录中访问标记文件的修改时间作为最近访问时间，超过总大小上限时按LRU淘汰
+ * 不使用目录本身的修改时间：删除目录中过期的图片也会更新它，过期的条目反而显得最近被访问过
+ */
+public class ResponseCache {
+    static final String ACCESS_MARKER = ".access";
+
+    private final File cacheDir;
+    private final long ttlMillis;
+    private final long maxSizeBytes;
+    private final EngineLog log;
+
+    public ResponseCache(File cacheDir, long ttlMillis, long maxSizeBytes, EngineLog log) {
+        this.cacheDir = cacheDir;
+        this.ttlMillis = ttlMillis;
+        this.maxSizeBytes = maxSizeBytes;
+        this.log = log;
+    }
+
+    /**
+     * 获取缓存的输出图片，过期的图片会被删除
+     * @param max 最多返回的数量
+     */
+    public synchronized List<File> get(String key, int max) {
+        List<File> hits = new ArrayList<>();
+        File entryDir = new File(cacheDir, key);
+        File[] files = listImages(entryDir);
+        if (files == null) {
+            return hits;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > ttlMillis) {
+                file.delete();
+            } else if (hits.size() < max) {
+                hits.add(file);
+            }
+        }
+
+        if (hits.isEmpty()) {
+            deleteEntry(entryDir);
+        } else {
+            touch(entryDir, now);
+            log.d(LOG_PROCESS, "响应缓存命中 " + hits.size() + " 张图片");
+        }
+        return hits;
+    }
+
+    /**
+     * 将一张输出图片加入缓存
+     */
+    public synchronized void put(String key, File image) {
+        File entryDir = new File(cacheDir, key);
+        if (!entryDir.exists() && !entryDir.mkdirs()) {
+            log.w(LOG_ERROR_TAG, "无法创建响应缓存目录: " + entryDir.getAbsolutePath());
+            return;
+        }
+        File cached = new File(entryDir, image.getName());
+        try {
+            copyFile(image, cached);
+            touch(entryDir, System.currentTimeMillis());
+        } catch (IOException e) {
+            cached.delete();
+            log.w(LOG_ERROR_TAG, "写入响应缓存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 淘汰过期和最久未访问的缓存，直到总大小不超过上限
+     */
+    public synchronized void trim() {
+        File[] entries = cacheDir.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        // 在删除任何文件之前按访问时间排序
+        Map<File, Long> accessTimes = new HashMap<>();
+        for (File entry : entries) {
+            accessTimes.put(entry, accessTime(entry));
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(accessTimes.get(a), accessTimes.get(b)));
+
+        long now = System.currentTimeMillis();
+        long totalSize = 0;
+        for (File entry : entries) {
+            File[] files = listImages(entry);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (now - file.lastModified() > ttlMillis) {
+                    file.delete();
+                } else {
+                    totalSize += file.length();
+                }
+            }
+        }
+
+        int evicted = 0;
+        for (File entry : entries) {
+            File[] files = listImages(entry);
+            if (files == null) {
+                continue;
+            }
+            if (totalSize <= maxSizeBytes && files.length > 0) {
+                continue;
+            }
+            for (File file : files) {
+                totalSize -= file.length();
+            }
+            deleteEntry(entry);
+            evicted++;
+        }
+        if (evicted > 0) {
+            log.d(LOG_PROCESS, "响应缓存淘汰 " + evicted + " 个条目，剩余大小: " + totalSize + "字节");
+        }
+    }
+
+    /**
+     * 条目中的图片，不包括访问标记；不是目录时返回null
+     */
+    private static File[] listImages(File entryDir) {
+        return entryDir.listFiles(file -> !file.getName().equals(ACCESS_MARKER));
+    }
+
+    /**
+     * 更新条目的访问时间
+     */
+    private void touch(File entryDir, long now) {
+        File marker = new File(entryDir, ACCESS_MARKER);
+        try {
+            if (!marker.exists()) {
+                marker.createNewFile();
+            }
+            marker.setLastModified(now);
+        } catch (IOException e) {
+            log.w(LOG_ERROR_TAG, "更新响应缓存访问时间失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 条目的最近访问时间，没有访问标记时为0，最先被淘汰
+     */
+    private static long accessTime(File entryDir) {
+        return new File(entryDir, ACCESS_MARKER).lastModified();
+    }
+
+    private static void deleteEntry(File entryDir) {
+        File[] files = entryDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        entryDir.delete();
+    }
+
+    static void copyFile(File source, File target) throws IOException {
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.geminiimageapp.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 相同请求合并执行：同一个key只有第一个提交者真正执行，执行期间加入的提交者等待并共享它的结果
+ * 执行结束后立即移除，之后再提交相同的请求会重新执行
+ */
+public class SingleFlight<T> {
+    private final Map<String, Call<T>> calls = new HashMap<>();
+
+    /**
+     * 加入指定key的执行，没有进行中的相同请求时返回的调用由当前提交者负责执行
+     */
+    public synchronized Call<T> join(String key) {
+        Call<T> existing = calls.get(key);
+        if (existing != null) {
+            return new Call<>(this, key, existing, false);
+        }
+        Call<T> call = new Call<>(this, key, null, true);
+        calls.put(key, call);
+        return call;
+    }
+
+    private synchronized void onComplete(Call<T> call) {
+        if (calls.get(call.key) == call) {
+            calls.remove(call.key);
+        }
+    }
+
+    /**
+     * 一次合并执行，执行者调用complete，等待者调用await
+     */
+    public static class Call<T> {
+        private final SingleFlight<T> owner;
+        private final String key;
+        private final Call<T> leaderCall;
+        private final boolean leader;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile T result;
+
+        private Call(SingleFlight<T> owner, String key, Call<T> leaderCall, boolean leader) {
+            this.owner = owner;
+            this.key = key;
+            this.leaderCall = leaderCall;
+            this.leader = leader;
+        }
+
+        /**
+         * 当前提交者是否负责真正执行
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 执行者提交结果，唤醒所有等待者
+         */
+        public void complete(T result) {
+            if (!leader) {
+                throw new IllegalStateException("只有执行者可以提交结果");
+            }
+            this.result = result;
+            latch.countDown();
+            owner.onComplete(this);
+        }
+
+        /**
+         * 等待执行者的结果
+         */
+        public T await() throws InterruptedException {
+            Call<T> target = leader ? this : leaderCall;
+            target.latch.await();
+            return target.result;
+        }
+    }
+}
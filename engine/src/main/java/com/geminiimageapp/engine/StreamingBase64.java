@@ -0,0 +1,225 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 分块的Base64编解码，原始字节只经过池化的直接缓冲区和每个线程一块的小数组：
+ * 编码时从通道分块读取，不需要完整的原始字节数组；解码时分块写入通道（例如输出文件），
+ * 不需要完整的解码结果数组
+ * 编码输出不换行（对应NO_WRAP），解码时跳过空白字符
+ */
+public final class StreamingBase64 {
+    // 每块的字节数，3的倍数，编码时每块正好对应整数个Base64字符组
+    static final int CHUNK_BYTES = 48 * 1024;
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final int SKIP = -2;
+    private static final int INVALID = -1;
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, INVALID);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = i;
+        }
+        DECODE_TABLE[' '] = SKIP;
+        DECODE_TABLE['\t'] = SKIP;
+        DECODE_TABLE['\r'] = SKIP;
+        DECODE_TABLE['\n'] = SKIP;
+    }
+
+    private static final DirectBufferPool POOL = new DirectBufferPool(CHUNK_BYTES, 4);
+    // 每个线程一块小的堆数组，在直接缓冲区和编解码循环之间批量复制，逐字节访问直接缓冲区较慢
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_BYTES];
+        }
+    };
+    // 解码时分块取出的字符，一块正好解码为一块字节
+    private static final ThreadLocal<char[]> CHAR_SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[CHUNK_BYTES / 3 * 4];
+        }
+    };
+
+    private StreamingBase64() {
+    }
+
+    /**
+     * 从通道读取原始字节并编码
+     * @param expectedLength 预计的原始字节数，用于预先分配输出，未知时传-1
+     * @param maxBytes 原始字节数上限
+     * @return Base64字符串，超过上限时返回null
+     */
+    public static String encode(ReadableByteChannel source, long expectedLength, long maxBytes) throws IOException {
+        byte[] out = new byte[expectedLength > 0 ? encodedLength(expectedLength) : CHUNK_BYTES / 3 * 4];
+        int outPos = 0;
+        long total = 0;
+        ByteBuffer in = POOL.acquire();
+        try {
+            boolean eof = false;
+            while (!eof) {
+                // 读满一块或到达末尾
+                while (in.hasRemaining()) {
+                    int read = source.read(in);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    total += read;
+                    if (total > maxBytes) {
+                        return null;
+                    }
+                }
+                in.flip();
+                int encodable = eof ? in.remaining() : in.remaining() / 3 * 3;
+                int needed = outPos + encodedLength(encodable);
+                if (needed > out.length) {
+                    out = Arrays.copyOf(out, Math.max(needed, out.length * 2));
+                }
+                outPos = encodeChunk(in, encodable, out, outPos);
+                in.compact();
+            }
+        } finally {
+            POOL.release(in);
+        }
+        return new String(out, 0, outPos, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 解码并分块写入通道
+     * @return 写入的字节数
+     * @throws IllegalArgumentException Base64数据格式不正确
+     */
+    public static long decode(CharSequence base64, WritableByteChannel target) throws IOException {
+        String text = base64.toString();
+        ByteBuffer out = POOL.acquire();
+        byte[] scratch = SCRATCH.get();
+        char[] chars = CHAR_SCRATCH.get();
+        long written = 0;
+        try {
+            int pos = 0;
+            int bits = 0;
+            int count = 0;
+            int length = text.length();
+            boolean padding = false;
+            for (int start = 0; start < length && !padding; start += chars.length) {
+                int end = Math.min(length, start + chars.length);
+                text.getChars(start, end, chars, 0);
+                int chunkLength = end - start;
+                int i = 0;
+                while (i < chunkLength) {
+                    // 常见情况：连续4个有效字符，一次处理一组
+                    if (count == 0 && i + 4 <= chunkLength) {
+                        int a = lookup(chars[i]);
+                        int b = lookup(chars[i + 1]);
+                        int c = lookup(chars[i + 2]);
+                        int d = lookup(chars[i + 3]);
+                        if ((a | b | c | d) >= 0) {
+                            if (pos > scratch.length - 3) {
+                                written += flush(scratch, pos, out, target);
+                                pos = 0;
+                            }
+                            int group = a << 18 | b << 12 | c << 6 | d;
+                            scratch[pos++] = (byte) (group >> 16);
+                            scratch[pos++] = (byte) (group >> 8);
+                            scratch[pos++] = (byte) group;
+                            i += 4;
+                            continue;
+                        }
+                    }
+                    // 空白、填充或块的末尾，逐个字符处理
+                    char ch = chars[i++];
+                    if (ch == '=') {
+                        padding = true;
+                        break;
+                    }
+                    int value = lookup(ch);
+                    if (value == SKIP) {
+                        continue;
+                    }
+                    if (value == INVALID) {
+                        throw new IllegalArgumentException("无效的Base64字符，位置: " + (start + i - 1));
+                    }
+                    bits = (bits << 6) | value;
+                    if (++count == 4) {
+                        if (pos > scratch.length - 3) {
+                            written += flush(scratch, pos, out, target);
+                            pos = 0;
+                        }
+                        scratch[pos++] = (byte) (bits >> 16);
+                        scratch[pos++] = (byte) (bits >> 8);
+                        scratch[pos++] = (byte) bits;
+                        bits = 0;
+                        count = 0;
+                    }
+                }
+            }
+            // 末尾不足4个字符的部分（有没有填充都接受）
+            if (pos > scratch.length - 2) {
+                written += flush(scratch, pos, out, target);
+                pos = 0;
+            }
+            if (count == 2) {
+                scratch[pos++] = (byte) (bits >> 4);
+            } else if (count == 3) {
+                scratch[pos++] = (byte) (bits >> 10);
+                scratch[pos++] = (byte) (bits >> 2);
+            } else if (count == 1) {
+                throw new IllegalArgumentException("Base64数据长度不正确");
+            }
+            written += flush(scratch, pos, out, target);
+        } finally {
+            POOL.release(out);
+        }
+        return written;
+    }
+
+    private static int lookup(char c) {
+        return c < 128 ? DECODE_TABLE[c] : INVALID;
+    }
+
+    static int encodedLength(long rawLength) {
+        return (int) ((rawLength + 2) / 3 * 4);
+    }
+
+    private static int encodeChunk(ByteBuffer in, int length, byte[] out, int outPos) {
+        byte[] scratch = SCRATCH.get();
+        in.get(scratch, 0, length);
+        int full = length / 3 * 3;
+        for (int i = 0; i < full; i += 3) {
+            int bits = (scratch[i] & 0xff) << 16 | (scratch[i + 1] & 0xff) << 8 | (scratch[i + 2] & 0xff);
+            out[outPos++] = ALPHABET[bits >>> 18];
+            out[outPos++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[outPos++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[outPos++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = length - full;
+        if (remaining > 0) {
+            int bits = (scratch[full] & 0xff) << 16 | (remaining == 2 ? (scratch[full + 1] & 0xff) << 8 : 0);
+            out[outPos++] = ALPHABET[bits >>> 18];
+            out[outPos++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[outPos++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            out[outPos++] = '=';
+        }
+        return outPos;
+    }
+
+    private static int flush(byte[] scratch, int length, ByteBuffer out, WritableByteChannel target) throws IOException {
+        out.put(scratch, 0, length);
+        out.flip();
+        while (out.hasRemaining()) {
+            target.write(out);
+        }
+        out.clear();
+        return length;
+    }
+}
@@ -0,0 +1,16 @@
+package com.geminiimageapp.engine;
+
+import java.io.IOException;
+
+/**
+ * 可以直接保存Base64数据的输出，边解码边写入，不需要完整的解码结果数组
+ */
+public interface StreamingOutputSink extends OutputSink {
+
+    /**
+     * 保存一张生成的图片
+     * @param base64Data Base64编码的图像数据
+     * @return 保存后的路径
+     */
+    String saveBase64(CharSequence base64Data) throws IOException;
+}
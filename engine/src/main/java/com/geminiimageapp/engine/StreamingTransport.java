@@ -0,0 +1,25 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 支持流式端点（streamGenerateContent，SSE）的传输，响应片段一到达就交给调用方处理，
+ * 不需要等待并缓存完整的响应体
+ */
+public interface StreamingTransport extends Transport {
+
+    /**
+     * 响应片段的处理回调，在发送请求的线程中调用
+     */
+    interface ChunkHandler {
+        /**
+         * @param chunkJson 一个SSE事件的数据，即一个片段的GenerateContentResponse JSON
+         * @throws GeminiException 片段处理失败，停止读取后续片段
+         */
+        void onChunk(String chunkJson) throws GeminiException;
+    }
+
+    /**
+     * 发送流式请求，所有片段处理完后返回
+     * @throws GeminiException 网络错误、HTTP状态码不是2xx或片段处理失败
+     */
+    void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException;
+}
@@ -0,0 +1,99 @@
+package com.geminiimageapp.engine;
+
+import static com.geminiimageapp.engine.EngineLog.*;
+
+/**
+ * 客户端限流：每个请求先取得令牌和并发名额，再交给实际的传输发送；没有令牌桶时只限制并发
+ * 429、5xx和网络错误降低并发上限，成功的请求根据延迟逐步提高
+ * 实际的传输支持流式请求时，流式请求同样受限流控制
+ */
+public class ThrottledTransport implements StreamingTransport {
+    private final Transport delegate;
+    private final TokenBucket tokenBucket;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final EngineLog log;
+
+    /**
+     * @param tokenBucket 请求速率限制，为null时不限制速率
+     */
+    public ThrottledTransport(Transport delegate, TokenBucket tokenBucket, AdaptiveConcurrencyLimit concurrencyLimit,
+                              EngineLog log) {
+        this.delegate = delegate;
+        this.tokenBucket = tokenBucket;
+        this.concurrencyLimit = concurrencyLimit;
+        this.log = log;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return delegate.getEndpoint();
+    }
+
+    @Override
+    public String send(String apiKey, String requestJson) throws GeminiException {
+        return throttled(() -> delegate.send(apiKey, requestJson));
+    }
+
+    @Override
+    public void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+        if (!(delegate instanceof StreamingTransport)) {
+            throw new GeminiException("传输不支持流式请求: " + delegate.getClass().getSimpleName());
+        }
+        throttled(() -> {
+            ((StreamingTransport) delegate).stream(apiKey, requestJson, handler);
+            return null;
+        });
+    }
+
+    private interface Request<T> {
+        T execute() throws GeminiException;
+    }
+
+    private <T> T throttled(Request<T> request) throws GeminiException {
+        try {
+            concurrencyLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiException("等待并发名额时被中断", e);
+        }
+
+        if (tokenBucket != null) {
+            try {
+                long waited = tokenBucket.acquire();
+                if (waited > 0) {
+                    log.d(LOG_API, "客户端限流，等待 " + waited + "ms");
+                }
+            } catch (InterruptedException e) {
+                concurrencyLimit.onIgnore();
+                Thread.currentThread().interrupt();
+                throw new GeminiException("等待限流令牌时被中断", e);
+            }
+        }
+        long startTime = System.currentTimeMillis();
+
+        try {
+            T response = request.execute();
+            concurrencyLimit.onSuccess(System.currentTimeMillis() - startTime);
+            return response;
+        } catch (GeminiException e) {
+            int statusCode = e.getStatusCode();
+            if (Thread.currentThread().isInterrupted() || e instanceof KeyPoolExhaustedException) {
+                // 用户取消了任务，或没有可用的密钥而请求没有发出，都不代表服务端过载
+                concurrencyLimit.onIgnore();
+            } else if (statusCode == 429) {
+                if (tokenBucket != null) {
+                    tokenBucket.drain();
+                }
+                concurrencyLimit.onOverload();
+            } else if (statusCode == 0 || statusCode >= 500) {
+                concurrencyLimit.onOverload();
+            } else {
+                concurrencyLimit.onIgnore();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            concurrencyLimit.onIgnore();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 令牌桶限流：按固定速率补充令牌，桶满时最多允许burst个请求连续发出
+ */
+public class TokenBucket {
+    private final double permitsPerMilli;
+    private final double burst;
+    private double tokens;
+    private long lastRefillMillis;
+
+    /**
+     * @param permitsPerMinute 每分钟允许的请求数，必须大于0
+     * @param burst 允许连续发出的最大请求数，至少为1
+     */
+    public TokenBucket(double permitsPerMinute, int burst) {
+        // 速率为0时等待时间无穷大，桶容量小于1时永远攒不够一个令牌，两者都会让请求一直等待
+        if (!(permitsPerMinute > 0)) {
+            throw new IllegalArgumentException("每分钟请求数必须大于0: " + permitsPerMinute);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("突发请求数至少为1: " + burst);
+        }
+        this.permitsPerMilli = permitsPerMinute / 60000.0;
+        this.burst = burst;
+        this.tokens = this.burst;
+        this.lastRefillMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 取得一个令牌，没有令牌时等待
+     * @return 等待的毫秒数
+     */
+    public long acquire() throws InterruptedException {
+        long waited = 0;
+        while (true) {
+            long waitMillis;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return waited;
+                }
+                waitMillis = (long) Math.ceil((1 - tokens) / permitsPerMilli);
+            }
+            Thread.sleep(waitMillis);
+            waited += waitMillis;
+        }
+    }
+
+    /**
+     * 服务端返回限流时清空令牌，下一个请求至少等待一个补充周期
+     */
+    public synchronized void drain() {
+        refill();
+        tokens = Math.min(tokens, 0);
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(burst, tokens + (now - lastRefillMillis) * permitsPerMilli);
+        lastRefillMillis = now;
+    }
+}
@@ -0,0 +1,85 @@
+package com.geminiimageapp.engine;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求和响应的传输统计，用于确认压缩节省的流量
+ * 原始大小是请求体/响应体本身的字节数，传输大小是实际在网络上发送或接收的字节数
+ */
+public class TransferStats {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+    private final AtomicLong compressionFallbacks = new AtomicLong();
+
+    public void recordRequest(long bytes, long wireBytes, boolean compressed) {
+        requests.incrementAndGet();
+        if (compressed) {
+            compressedRequests.incrementAndGet();
+        }
+        requestBytes.addAndGet(bytes);
+        requestWireBytes.addAndGet(wireBytes);
+    }
+
+    public void recordResponse(long bytes, long wireBytes, boolean compressed) {
+        if (compressed) {
+            compressedResponses.incrementAndGet();
+        }
+        responseBytes.addAndGet(bytes);
+        responseWireBytes.addAndGet(wireBytes);
+    }
+
+    /**
+     * 端点不接受压缩的请求体，改为不压缩发送
+     */
+    public void recordFallback() {
+        compressionFallbacks.incrementAndGet();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    public long getCompressionFallbacks() {
+        return compressionFallbacks.get();
+    }
+
+    /**
+     * 请求体传输大小与原始大小之比，没有请求时为1
+     */
+    public double getRequestRatio() {
+        long bytes = requestBytes.get();
+        return bytes > 0 ? (double) requestWireBytes.get() / bytes : 1;
+    }
+
+    public double getResponseRatio() {
+        long bytes = responseBytes.get();
+        return bytes > 0 ? (double) responseWireBytes.get() / bytes : 1;
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "请求 %d 次（压缩 %d 次），请求体 %dKB → %dKB（%.0f%%）；"
+                        + "响应体 %dKB → %dKB（%.0f%%，压缩 %d 次）；不支持压缩回退 %d 次",
+                requests.get(), compressedRequests.get(),
+                requestBytes.get() / 1024, requestWireBytes.get() / 1024, getRequestRatio() * 100,
+                responseBytes.get() / 1024, responseWireBytes.get() / 1024, getResponseRatio() * 100,
+                compressedResponses.get(), compressionFallbacks.get());
+    }
+}
@@ -0,0 +1,20 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 请求传输接口，负责把请求体发送到generateContent端点并返回响应体
+ */
+public interface Transport {
+
+    /**
+     * 请求的端点地址（包含模型名），用于识别相同的请求
+     */
+    String getEndpoint();
+
+    /**
+     * @param apiKey API密钥
+     * @param requestJson 请求体JSON
+     * @return 响应体JSON
+     * @throws GeminiException 网络错误或HTTP状态码不是2xx
+     */
+    String send(String apiKey, String requestJson) throws GeminiException;
+}
@@ -0,0 +1,91 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void halvesOnOverload() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(8, 1, 16);
+        limit.acquire();
+        limit.onOverload();
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void neverDropsBelowMinimum() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(2, 2, 16);
+        limit.acquire();
+        limit.onOverload();
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void growsByOnePerRoundWhenLatencyIsNormal() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(2, 1, 16);
+        // 每次成功增加1/limit：2 → 2.5 → 2.9 → 3.24
+        succeed(limit, 100);
+        succeed(limit, 100);
+        assertEquals(2, limit.getLimit());
+        succeed(limit, 100);
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    public void holdsWhenLatencyRises() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(4, 1, 16);
+        succeed(limit, 100);
+        // 延迟超过最低延迟的2倍，说明服务端接近饱和
+        for (int i = 0; i < 20; i++) {
+            succeed(limit, 300);
+        }
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void neverExceedsMaximum() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(2, 1, 3);
+        for (int i = 0; i < 50; i++) {
+            succeed(limit, 100);
+        }
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    public void blocksUntilSlotIsReleased() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit(1, 1, 1);
+        limit.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limit.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiter.start();
+        try {
+            assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+            limit.onIgnore();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        } finally {
+            waiter.interrupt();
+        }
+    }
+
+    private static void succeed(AdaptiveConcurrencyLimit limit, long latencyMillis) throws InterruptedException {
+        limit.acquire();
+        limit.onSuccess(latencyMillis);
+    }
+
+    private static AdaptiveConcurrencyLimit limit(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimit(initial, min, max, 2.0, TestLog.INSTANCE);
+    }
+}
@@ -0,0 +1,133 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ApiKeyPoolTest {
+    private static final String RETRY_30S = "{\"error\":{\"code\":429,\"details\":[{\"retryDelay\": \"30s\"}]}}";
+
+    @Test
+    public void distributesByWeight() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 2, "b", 1);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            counts.merge(pool.acquire(null), 1, Integer::sum);
+        }
+        assertEquals(20, (int) counts.get("a"));
+        assertEquals(10, (int) counts.get("b"));
+    }
+
+    @Test
+    public void interleavesEqualWeights() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1, "b", 1);
+        String first = pool.acquire(null);
+        String second = pool.acquire(null);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void skipsKeyCoolingDownAfter429() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1, "b", 1);
+        assertTrue(pool.report("a", 429, RETRY_30S));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("b", pool.acquire(null));
+        }
+    }
+
+    @Test
+    public void returnsNullWhenNoOtherKeyIsAvailable() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1, "b", 1);
+        pool.report("b", 429, RETRY_30S);
+        assertNull(pool.acquire("a"));
+    }
+
+    @Test
+    public void waitsForShortCooldown() throws Exception {
+        ApiKeyPool pool = pool(5000, "a", 1);
+        pool.report("a", 429, "\"retryDelay\": \"0.2s\"");
+        long start = System.currentTimeMillis();
+        assertEquals("a", pool.acquire(null));
+        long waited = System.currentTimeMillis() - start;
+        assertTrue("等待了 " + waited + "ms", waited >= 150 && waited < 5000);
+    }
+
+    @Test
+    public void failsFastWhenCooldownExceedsMaxWait() throws Exception {
+        ApiKeyPool pool = pool(100, "a", 1, "b", 1);
+        pool.report("a", 429, RETRY_30S);
+        pool.report("b", 429, RETRY_30S);
+        long start = System.currentTimeMillis();
+        try {
+            pool.acquire(null);
+            fail("冷却超过等待上限时应该立即失败");
+        } catch (KeyPoolExhaustedException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void failsFastWhenAllKeysAreInvalid() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1, "b", 1);
+        assertTrue(pool.report("a", 401, "unauthorized"));
+        assertTrue(pool.report("b", 403, "forbidden"));
+        long start = System.currentTimeMillis();
+        try {
+            pool.acquire(null);
+            fail("所有密钥都无效时应该立即失败");
+        } catch (KeyPoolExhaustedException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void otherFailuresDoNotCoolDown() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1);
+        assertFalse(pool.report("a", 500, "server error"));
+        assertFalse(pool.report("a", 0, "timeout"));
+        assertEquals("a", pool.acquire(null));
+    }
+
+    @Test
+    public void keepsCooldownAcrossReconfigure() throws Exception {
+        ApiKeyPool pool = pool(ApiKeyPool.DEFAULT_MAX_WAIT_MILLIS, "a", 1, "b", 1);
+        pool.report("a", 429, RETRY_30S);
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("a", 5);
+        weights.put("b", 1);
+        pool.configure(weights);
+        assertEquals("b", pool.acquire(null));
+    }
+
+    @Test
+    public void parsesRetryDelay() {
+        assertEquals(30000, ApiKeyPool.parseRetryDelay(RETRY_30S));
+        assertEquals(1500, ApiKeyPool.parseRetryDelay("\"retryDelay\":\"1.5s\""));
+        assertEquals(-1, ApiKeyPool.parseRetryDelay("quota exceeded"));
+        assertEquals(-1, ApiKeyPool.parseRetryDelay(null));
+    }
+
+    @Test
+    public void masksKey() {
+        assertEquals("AIza...wxyz", ApiKeyPool.mask("AIzaSyABCDEFwxyz"));
+    }
+
+    private static ApiKeyPool pool(long maxWaitMillis, Object... keysAndWeights) {
+        ApiKeyPool pool = new ApiKeyPool(maxWaitMillis, TestLog.INSTANCE);
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndWeights.length; i += 2) {
+            weights.put((String) keysAndWeights[i], (Integer) keysAndWeights[i + 1]);
+        }
+        pool.configure(weights);
+        return pool;
+    }
+}
@@ -0,0 +1,219 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EndpointRouterTest {
+
+    /**
+     * 按设定的状态码返回的端点，200表示成功，0表示网络错误
+     */
+    private static class FakeTransport implements StreamingTransport {
+        final String endpoint;
+        volatile int status = 200;
+        // 模拟密钥池中没有可用的密钥
+        volatile boolean keysExhausted;
+        int calls;
+
+        FakeTransport(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        @Override
+        public synchronized String send(String apiKey, String requestJson) throws GeminiException {
+            calls++;
+            if (keysExhausted) {
+                throw new KeyPoolExhaustedException("所有API密钥都在冷却中");
+            }
+            if (status != 200) {
+                throw new GeminiException(endpoint + " 失败", status);
+            }
+            return endpoint;
+        }
+
+        @Override
+        public synchronized void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+            calls++;
+            handler.onChunk(endpoint);
+            if (status != 200) {
+                throw new GeminiException(endpoint + " 中途失败", status);
+            }
+        }
+    }
+
+    @Test
+    public void prefersHealthyPrimary() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        EndpointRouter router = router(primary, backup);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("primary", router.send("key", "{}"));
+        }
+        assertEquals(0, backup.calls);
+        assertEquals("primary", router.getEndpoint());
+    }
+
+    @Test
+    public void failsOverOnServerError() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        primary.status = 503;
+        assertEquals("backup", router(primary, backup).send("key", "{}"));
+        assertEquals(1, primary.calls);
+        assertEquals(1, backup.calls);
+    }
+
+    @Test
+    public void failsOverOnRateLimitAndNetworkError() throws Exception {
+        for (int status : new int[]{429, 0}) {
+            FakeTransport primary = new FakeTransport("primary");
+            FakeTransport backup = new FakeTransport("backup");
+            primary.status = status;
+            assertEquals("状态码 " + status, "backup", router(primary, backup).send("key", "{}"));
+        }
+    }
+
+    @Test
+    public void doesNotFailOverOnClientError() {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        primary.status = 400;
+        try {
+            router(primary, backup).send("key", "{}");
+            fail("400是请求本身的问题，不应该换端点");
+        } catch (GeminiException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertEquals(0, backup.calls);
+    }
+
+    @Test
+    public void keyPoolExhaustionIsNotEndpointFailure() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        EndpointRouter router = router(primary, backup);
+        primary.keysExhausted = true;
+        for (int i = 0; i < 5; i++) {
+            try {
+                router.send("key", "{}");
+                fail("没有可用的密钥时应该抛出异常");
+            } catch (KeyPoolExhaustedException expected) {
+            }
+        }
+        // 不换端点，也不降低主端点的健康度
+        assertEquals(0, backup.calls);
+        assertFalse(router.summary().contains("暂停"));
+        assertTrue(router.summary(), router.summary().startsWith("primary: 请求 5，失败 0，"));
+        primary.keysExhausted = false;
+        assertEquals("primary", router.send("key", "{}"));
+    }
+
+    @Test
+    public void throwsWhenAllEndpointsFail() {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        primary.status = 500;
+        backup.status = 502;
+        try {
+            router(primary, backup).send("key", "{}");
+            fail("所有端点都失败时应该抛出异常");
+        } catch (GeminiException e) {
+            assertEquals(502, e.getStatusCode());
+        }
+        assertEquals(1, primary.calls);
+        assertEquals(1, backup.calls);
+    }
+
+    @Test
+    public void routesAwayFromFailingPrimary() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        EndpointRouter router = router(primary, backup);
+        primary.status = 500;
+        for (int i = 0; i < 10; i++) {
+            assertEquals("backup", router.send("key", "{}"));
+        }
+        // 错误率升高或连续失败3次被暂停后，请求直接发往备用端点
+        assertTrue("主端点请求了 " + primary.calls + " 次", primary.calls <= 3);
+        assertEquals(10, backup.calls);
+    }
+
+    @Test
+    public void ejectsEndpointAfterConsecutiveFailures() {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        EndpointRouter router = router(primary, backup);
+        primary.status = 500;
+        backup.status = 500;
+        for (int i = 0; i < 2; i++) {
+            sendIgnoringFailure(router);
+        }
+        assertFalse(router.summary().contains("暂停"));
+        sendIgnoringFailure(router);
+        assertEquals(3, primary.calls);
+        assertEquals(3, backup.calls);
+        String summary = router.summary();
+        assertEquals(summary, 2, summary.split("暂停剩余", -1).length - 1);
+    }
+
+    @Test
+    public void usesEjectedEndpointWhenNothingElseIsLeft() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        EndpointRouter router = router(primary, backup);
+        primary.status = 500;
+        for (int i = 0; i < 3; i++) {
+            router.send("key", "{}");
+        }
+        backup.status = 500;
+        primary.status = 200;
+        // 备用端点失败后，被暂停的主端点仍然作为最后的选择
+        assertEquals("primary", router.send("key", "{}"));
+    }
+
+    @Test
+    public void streamFailsOverBeforeFirstChunkOnly() throws Exception {
+        FakeTransport primary = new FakeTransport("primary");
+        FakeTransport backup = new FakeTransport("backup");
+        primary.status = 500;
+        List<String> chunks = new ArrayList<>();
+        try {
+            router(primary, backup).stream("key", "{}", chunks::add);
+            fail("收到片段后失败不应该换端点重发");
+        } catch (GeminiException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(Arrays.asList("primary"), chunks);
+        assertEquals(0, backup.calls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyEndpointList() {
+        new EndpointRouter(new ArrayList<Transport>(), TestLog.INSTANCE);
+    }
+
+    private static void sendIgnoringFailure(EndpointRouter router) {
+        try {
+            router.send("key", "{}");
+            fail("所有端点都失败时应该抛出异常");
+        } catch (GeminiException expected) {
+        }
+    }
+
+    private static EndpointRouter router(Transport... transports) {
+        return new EndpointRouter(Arrays.asList(transports), TestLog.INSTANCE);
+    }
+}
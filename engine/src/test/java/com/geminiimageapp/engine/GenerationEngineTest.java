@@ -0,0 +1,282 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GenerationEngineTest {
+    private static final PreparedImage IMAGE = new PreparedImage("image/jpeg", "QUJD", false);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void retriesFailedAttempts() {
+        FakeTransport transport = new FakeTransport(500, 0, 1);
+        List<Integer> attempts = new ArrayList<>();
+        List<String> paths = engine(transport).generate("key", IMAGE, "prompt", 1, 3, new RecordingListener() {
+            @Override
+            public void onAttempt(int index, int attempt, int maxRetries) {
+                attempts.add(attempt);
+            }
+        });
+        assertEquals(Collections.singletonList("out-1"), paths);
+        assertEquals(Arrays.asList(0, 1, 2), attempts);
+        assertEquals(3, transport.calls);
+    }
+
+    @Test
+    public void givesUpOnOutputAfterMaxRetries() {
+        FakeTransport transport = new FakeTransport(500, 500, 500, 1);
+        List<String> paths = engine(transport).generate("key", IMAGE, "prompt", 2, 2, null);
+        // 第一张图片两次都失败，第二张图片第二次成功
+        assertEquals(Collections.singletonList("out-1"), paths);
+        assertEquals(4, transport.calls);
+    }
+
+    @Test
+    public void invalidResponseCountsAsFailedAttempt() {
+        FakeTransport transport = new FakeTransport(1);
+        transport.responses.addFirst("{\"candidates\":[]}");
+        List<String> paths = engine(transport).generate("key", IMAGE, "prompt", 1, 2, null);
+        assertEquals(Collections.singletonList("out-1"), paths);
+        assertEquals(2, transport.calls);
+    }
+
+    @Test
+    public void runGeneratesOnlyOutputsMissingFromJournal() throws Exception {
+        File root = folder.newFolder("jobs");
+        GenerationJob job = new GenerationJob("job-1", "key", "uri", "prompt", 3, 1, false);
+        JobJournal journal = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        journal.writeParams(job.toJson());
+        File done = folder.newFile("done.png");
+        journal.recordOutput(done.getAbsolutePath());
+
+        FakeTransport transport = new FakeTransport(1, 1);
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        GenerationResult result = engine(transport).run(job, "key", JobJournal.open(root, "job-1", TestLog.INSTANCE),
+                IMAGE, new RecordingListener() {
+                    @Override
+                    public void onStart(int total, int completed) {
+                        starts.add(completed);
+                    }
+
+                    @Override
+                    public void onOutput(int index, String path) {
+                        indexes.add(index);
+                    }
+                });
+
+        assertEquals(Arrays.asList(done.getAbsolutePath(), "out-1", "out-2"), result.getImagePaths());
+        assertEquals(Collections.singletonList(1), starts);
+        assertEquals(Arrays.asList(1, 2), indexes);
+        assertEquals(2, transport.calls);
+    }
+
+    @Test
+    public void waitsForNetworkBeforeSending() throws Exception {
+        NetworkGate gate = new NetworkGate(0, false, 10000, TestLog.INSTANCE);
+        gate.update(false, false, -1);
+        FakeTransport transport = new FakeTransport(1);
+        GenerationEngine engine = engine(transport);
+        engine.setNetworkGate(gate);
+
+        List<String> paths = new ArrayList<>();
+        Thread worker = new Thread(() -> paths.addAll(engine.generate("key", IMAGE, "prompt", 1, 1, null)));
+        worker.start();
+        Thread.sleep(100);
+        assertEquals(0, transport.calls);
+        gate.update(true, false, -1);
+        worker.join(5000);
+        assertEquals(Collections.singletonList("out-1"), paths);
+        assertEquals(1, transport.calls);
+    }
+
+    @Test
+    public void failureWhileOfflineDoesNotUseRetry() {
+        NetworkGate gate = new NetworkGate(0, false, 10000, TestLog.INSTANCE);
+        FakeTransport transport = new FakeTransport(0, 1) {
+            @Override
+            void onSend() {
+                if (calls == 1) {
+                    // 第一次请求时网络断开，稍后恢复
+                    gate.update(false, false, -1);
+                    reconnectLater(gate);
+                }
+            }
+        };
+        GenerationEngine engine = engine(transport);
+        engine.setNetworkGate(gate);
+        assertEquals(Collections.singletonList("out-1"), engine.generate("key", IMAGE, "prompt", 1, 1, null));
+        assertEquals(2, transport.calls);
+    }
+
+    @Test
+    public void countsFailuresOnceNetworkWaitTimesOut() {
+        NetworkGate gate = new NetworkGate(0, false, 50, TestLog.INSTANCE);
+        gate.update(false, false, -1);
+        FakeTransport transport = new FakeTransport(0);
+        GenerationEngine engine = engine(transport);
+        engine.setNetworkGate(gate);
+        // 网络一直不可用时，等待超时后的失败计入重试次数，不会无限等待
+        assertEquals(0, engine.generate("key", IMAGE, "prompt", 1, 2, null).size());
+        assertEquals(2, transport.calls);
+    }
+
+    @Test
+    public void requestsSeveralCandidatesPerCall() {
+        FakeTransport transport = new FakeTransport(3);
+        GenerationEngine engine = engine(transport);
+        engine.setMaxCandidates(4);
+        assertEquals(Arrays.asList("out-1", "out-2", "out-3"), engine.generate("key", IMAGE, "prompt", 3, 1, null));
+        assertEquals(1, transport.calls);
+    }
+
+    @Test
+    public void savesNoMoreThanRequestedOutputs() {
+        // 模型返回的图片多于任务需要的数量
+        FakeTransport transport = new FakeTransport(3);
+        List<Integer> indexes = new ArrayList<>();
+        List<String> paths = engine(transport).generate("key", IMAGE, "prompt", 2, 1, new RecordingListener() {
+            @Override
+            public void onOutput(int index, String path) {
+                indexes.add(index);
+            }
+        });
+        assertEquals(Arrays.asList("out-1", "out-2"), paths);
+        assertEquals(Arrays.asList(0, 1), indexes);
+        assertEquals(1, transport.calls);
+    }
+
+    @Test
+    public void streamingSavesNoMoreThanRequestedOutputs() {
+        StreamingTransport transport = new StreamingTransport() {
+            @Override
+            public String getEndpoint() {
+                return "test";
+            }
+
+            @Override
+            public String send(String apiKey, String requestJson) throws GeminiException {
+                throw new GeminiException("应该使用流式请求");
+            }
+
+            @Override
+            public void stream(String apiKey, String requestJson, ChunkHandler handler) throws GeminiException {
+                for (int i = 0; i < 3; i++) {
+                    handler.onChunk(FakeTransport.images(1));
+                }
+            }
+        };
+        GenerationEngine engine = engine(transport);
+        engine.setStreaming(true);
+        assertEquals(Arrays.asList("out-1", "out-2"), engine.generate("key", IMAGE, "prompt", 2, 1, null));
+    }
+
+    private static void reconnectLater(NetworkGate gate) {
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            gate.update(true, false, -1);
+        }).start();
+    }
+
+    private static GenerationEngine engine(Transport transport) {
+        return new GenerationEngine(source -> IMAGE, transport, new JdkCodec(), new CountingSink(),
+                TestLog.INSTANCE, 0);
+    }
+
+    /**
+     * 按顺序返回预设的结果：状态码表示请求失败，其余为响应体
+     * 预设的结果用完后重复最后一个
+     */
+    private static class FakeTransport implements Transport {
+        final Deque<Object> responses = new ArrayDeque<>();
+        volatile int calls;
+
+        /**
+         * @param results 大于0表示返回这么多张图片，0表示网络错误，其余为HTTP状态码
+         */
+        FakeTransport(int... results) {
+            for (int result : results) {
+                responses.add(result > 0 && result < 100 ? images(result) : (Object) result);
+            }
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "test";
+        }
+
+        @Override
+        public synchronized String send(String apiKey, String requestJson) throws GeminiException {
+            calls++;
+            Object response = responses.size() > 1 ? responses.poll() : responses.peek();
+            onSend();
+            if (response instanceof Integer) {
+                throw new GeminiException("请求失败", (Integer) response);
+            }
+            return (String) response;
+        }
+
+        void onSend() {
+        }
+
+        static String images(int count) {
+            StringBuilder json = new StringBuilder("{\"candidates\":[");
+            for (int i = 0; i < count; i++) {
+                json.append(i > 0 ? "," : "").append("{\"content\":{\"parts\":[{\"inlineData\":{\"data\":\"QUJD\"}}]}}");
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    private static class RecordingListener implements GenerationEngine.Listener {
+        @Override
+        public void onStart(int total, int completed) {
+        }
+
+        @Override
+        public void onAttempt(int index, int attempt, int maxRetries) {
+        }
+
+        @Override
+        public void onOutput(int index, String path) {
+        }
+    }
+
+    private static class CountingSink implements OutputSink {
+        private int count;
+
+        @Override
+        public String save(byte[] imageData) {
+            return "out-" + (++count);
+        }
+    }
+
+    private static class JdkCodec implements Base64Codec {
+        @Override
+        public String encode(byte[] data) {
+            return Base64.getEncoder().encodeToString(data);
+        }
+
+        @Override
+        public byte[] decode(String base64) {
+            return Base64.getDecoder().decode(base64);
+        }
+    }
+}
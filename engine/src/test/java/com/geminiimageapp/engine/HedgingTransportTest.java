@@ -0,0 +1,134 @@
+package com.geminiimageapp.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingTransportTest {
+    private HedgingTransport hedging;
+
+    @After
+    public void tearDown() {
+        if (hedging != null) {
+            hedging.shutdown();
+        }
+    }
+
+    @Test
+    public void doesNotHedgeWithoutEnoughSamples() throws Exception {
+        SlowTransport delegate = new SlowTransport(50);
+        hedging = new HedgingTransport(delegate, new LatencyTracker(100), 0.9, 1.0, 20, TestLog.INSTANCE);
+        assertEquals("ok", hedging.send("key", "{}"));
+        assertEquals(1, delegate.calls.get());
+    }
+
+    @Test
+    public void hedgedRequestWinsAndLoserIsCancelled() throws Exception {
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Transport delegate = new Transport() {
+            @Override
+            public String getEndpoint() {
+                return "test";
+            }
+
+            @Override
+            public String send(String apiKey, String requestJson) throws GeminiException {
+                if (calls.incrementAndGet() > 1) {
+                    return "hedge";
+                }
+                // 第一个请求一直不返回，直到被取消
+                try {
+                    Thread.sleep(10000);
+                    return "original";
+                } catch (InterruptedException e) {
+                    loserInterrupted.countDown();
+                    throw new GeminiException("API请求已取消", e);
+                }
+            }
+        };
+        hedging = new HedgingTransport(delegate, tracker(20), 0.9, 1.0, 20, TestLog.INSTANCE);
+
+        long start = System.currentTimeMillis();
+        assertEquals("hedge", hedging.send("key", "{}"));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(2, calls.get());
+        assertTrue("较慢的请求应该被取消", loserInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void budgetLimitsHedgedRequests() throws Exception {
+        // 每个请求100ms，超过记录的p90（20ms），每次都想对冲
+        SlowTransport delegate = new SlowTransport(100);
+        hedging = new HedgingTransport(delegate, tracker(20), 0.9, 0.25, 20, TestLog.INSTANCE);
+        for (int i = 0; i < 8; i++) {
+            assertEquals("ok", hedging.send("key", "{}"));
+        }
+        // 每个请求积累0.25个额度，8个请求只够对冲2次
+        assertEquals(10, delegate.calls.get());
+    }
+
+    @Test
+    public void failsOnlyWhenBothAttemptsFail() {
+        SlowTransport delegate = new SlowTransport(100);
+        delegate.failure = new GeminiException("服务端错误", 500);
+        hedging = new HedgingTransport(delegate, tracker(20), 0.9, 1.0, 20, TestLog.INSTANCE);
+        try {
+            hedging.send("key", "{}");
+            fail("两个请求都失败时应该抛出异常");
+        } catch (GeminiException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(2, delegate.calls.get());
+    }
+
+    /**
+     * 记录了100个固定延迟的样本
+     */
+    private static LatencyTracker tracker(long latencyMillis) {
+        LatencyTracker tracker = new LatencyTracker(100);
+        for (int i = 0; i < 100; i++) {
+            tracker.record(latencyMillis);
+        }
+        return tracker;
+    }
+
+    /**
+     * 每个请求固定耗时的传输
+     */
+    private static class SlowTransport implements Transport {
+        final AtomicInteger calls = new AtomicInteger();
+        final long latencyMillis;
+        volatile GeminiException failure;
+
+        SlowTransport(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "test";
+        }
+
+        @Override
+        public String send(String apiKey, String requestJson) throws GeminiException {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                throw new GeminiException("API请求已取消", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return "ok";
+        }
+    }
+}
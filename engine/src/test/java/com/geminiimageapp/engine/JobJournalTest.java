@@ -0,0 +1,111 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void missingJournalCreatesNothing() throws IOException {
+        File root = folder.newFolder("jobs");
+        JobJournal journal = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        assertFalse(journal.exists());
+        assertNull(journal.readPayload());
+        assertTrue(journal.getCompletedOutputs().isEmpty());
+        assertEquals(0, root.list().length);
+    }
+
+    @Test
+    public void resumesFromReopenedJournal() throws IOException {
+        File root = folder.newFolder("jobs");
+        GenerationJob job = new GenerationJob("job-1", "AIzaSecretKey", "content://image/1", "在海边", 3, 2, false);
+        JobJournal journal = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        journal.writeParams(job.toJson());
+        journal.writePayload(new PreparedImage("image/jpeg", "QUJD", false));
+        String first = output("1.png");
+        journal.recordOutput(first);
+
+        // 进程被杀死后重新打开
+        assertEquals(Collections.singletonList("job-1"), JobJournal.listPendingJobIds(root));
+        JobJournal resumed = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        assertTrue(resumed.exists());
+        GenerationJob restored = GenerationJob.fromJson(resumed.getParams());
+        assertEquals("content://image/1", restored.getImageUri());
+        assertEquals("在海边", restored.getPrompt());
+        assertEquals(3, restored.getNumOutputs());
+        assertEquals(2, restored.getMaxRetries());
+        PreparedImage payload = resumed.readPayload();
+        assertEquals("image/jpeg", payload.getMimeType());
+        assertEquals("QUJD", payload.getBase64Data());
+        assertFalse(payload.isPassthrough());
+        assertEquals(Collections.singletonList(first), resumed.getCompletedOutputs());
+
+        String second = output("2.png");
+        resumed.recordOutput(second);
+        assertEquals(Arrays.asList(first, second), JobJournal.open(root, "job-1", TestLog.INSTANCE).getCompletedOutputs());
+    }
+
+    @Test
+    public void doesNotWriteApiKey() throws IOException {
+        File root = folder.newFolder("jobs");
+        GenerationJob job = new GenerationJob("job-1", "AIzaSecretKey", "content://image/1", "prompt", 1, 1, false);
+        JobJournal.open(root, "job-1", TestLog.INSTANCE).writeParams(job.toJson());
+
+        String journalJson = new String(Files.readAllBytes(new File(new File(root, "job-1"), "job.json").toPath()),
+                StandardCharsets.UTF_8);
+        assertFalse(journalJson.contains("AIzaSecretKey"));
+        assertNull(GenerationJob.fromJson(JobJournal.open(root, "job-1", TestLog.INSTANCE).getParams()).getApiKey());
+    }
+
+    @Test
+    public void skipsOutputsWhoseFilesAreGone() throws IOException {
+        File root = folder.newFolder("jobs");
+        JobJournal journal = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        journal.writeParams(new GenerationJob("job-1", null, "uri", "prompt", 2, 1, false).toJson());
+        String kept = output("kept.png");
+        journal.recordOutput(kept);
+        journal.recordOutput(new File(folder.getRoot(), "deleted.png").getAbsolutePath());
+        journal.recordOutput(kept);
+        assertEquals(Collections.singletonList(kept), journal.getCompletedOutputs());
+    }
+
+    @Test
+    public void finishRemovesJournal() throws IOException {
+        File root = folder.newFolder("jobs");
+        JobJournal journal = JobJournal.open(root, "job-1", TestLog.INSTANCE);
+        journal.writeParams(new GenerationJob("job-1", null, "uri", "prompt", 1, 1, false).toJson());
+        journal.writePayload(new PreparedImage("image/png", "QUJD", true));
+        journal.recordOutput(output("1.png"));
+        journal.finish();
+
+        assertFalse(journal.exists());
+        assertFalse(new File(root, "job-1").exists());
+        assertTrue(JobJournal.listPendingJobIds(root).isEmpty());
+        assertFalse(JobJournal.open(root, "job-1", TestLog.INSTANCE).exists());
+    }
+
+    private String output(String name) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(1);
+        }
+        return file.getAbsolutePath();
+    }
+}
@@ -0,0 +1,121 @@
+package com.geminiimageapp.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class OkHttpTransportTest {
+    private static final String REQUEST = "{\"contents\":[{\"parts\":[{\"text\":\"test\"}]}]}";
+
+    private MockWebServer server;
+    private OkHttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        transport = new OkHttpTransport(new OkHttpClient(), server.url("/v1/models/test:generateContent").toString(),
+                TestLog.INSTANCE);
+        transport.setRequestCompression(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void sendsGzipCompressedBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        assertEquals("{}", transport.send("key", REQUEST));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals(REQUEST, gunzip(request.getBody()));
+        assertEquals(0, transport.getStats().getCompressionFallbacks());
+    }
+
+    @Test
+    public void fallsBackWhenEncodingIsUnsupported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        assertEquals("{}", transport.send("key", REQUEST));
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        RecordedRequest retry = server.takeRequest();
+        assertNull(retry.getHeader("Content-Encoding"));
+        assertEquals(REQUEST, retry.getBody().readUtf8());
+        assertEquals(1, transport.getStats().getCompressionFallbacks());
+
+        // 之后的请求不再压缩
+        transport.send("key", REQUEST);
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void fallsBackWhenBadRequestPointsAtEncoding() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":{\"message\":\"Invalid JSON payload received.\"}}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        assertEquals("{}", transport.send("key", REQUEST));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, transport.getStats().getCompressionFallbacks());
+    }
+
+    @Test
+    public void plainBadRequestIsNotRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":{\"message\":\"Unsupported parameter: candidateCount\"}}"));
+        try {
+            transport.send("key", REQUEST);
+            fail("与压缩无关的400应该直接抛出");
+        } catch (GeminiException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, transport.getStats().getCompressionFallbacks());
+    }
+
+    @Test
+    public void keepsCompressionWhenUncompressedRetryFailsTheSameWay() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(415));
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.send("key", REQUEST);
+                fail("服务端一直返回415时应该抛出异常");
+            } catch (GeminiException e) {
+                assertEquals(415, e.getStatusCode());
+            }
+        }
+        // 第一次不压缩重发同样失败后，确认失败与压缩无关，第二次不再重发，仍然压缩
+        assertEquals(3, server.getRequestCount());
+        server.takeRequest();
+        server.takeRequest();
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals(0, transport.getStats().getCompressionFallbacks());
+    }
+
+    private static String gunzip(Buffer body) throws IOException {
+        Buffer result = new Buffer();
+        try (GzipSource source = new GzipSource(body)) {
+            while (source.read(result, 8192) != -1) {
+                // 读取全部内容
+            }
+        }
+        return result.readUtf8();
+    }
+}
@@ -0,0 +1,68 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PromptTemplateTest {
+    private static final List<String> SLOTS = Arrays.asList("scene", "pose");
+
+    @Test
+    public void rendersSlotsInOrder() {
+        PromptTemplate template = PromptTemplate.compile("test", "在{scene}中，{pose}。", SLOTS);
+        assertEquals("在海边中，站立。", template.render("海边", "站立"));
+    }
+
+    @Test
+    public void rendersRepeatedAndAdjacentSlots() {
+        PromptTemplate template = PromptTemplate.compile("test", "{pose}{scene}{pose}", SLOTS);
+        assertEquals("xyx", template.render("y", "x"));
+    }
+
+    @Test
+    public void keepsTemplateWithoutSlots() {
+        PromptTemplate template = PromptTemplate.compile("test", "没有占位符", SLOTS);
+        assertEquals("没有占位符", template.render("a", "b"));
+    }
+
+    @Test
+    public void treatsNonIdentifierBracesAsText() {
+        String source = "{中文} { } {1st} {} {scene";
+        PromptTemplate template = PromptTemplate.compile("test", source, SLOTS);
+        assertEquals(source, template.render("a", "b"));
+    }
+
+    @Test
+    public void rendersNullAsEmpty() {
+        PromptTemplate template = PromptTemplate.compile("test", "[{scene}]", SLOTS);
+        assertEquals("[]", template.render(null, "b"));
+    }
+
+    @Test
+    public void rejectsUnknownSlot() {
+        try {
+            PromptTemplate.compile("custom", "在{place}中", SLOTS);
+            fail("未知的占位符应该在编译时报错");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("custom"));
+            assertTrue(e.getMessage().contains("{place}"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongArgumentCount() {
+        PromptTemplate.compile("test", "{scene}", SLOTS).render("a");
+    }
+
+    @Test
+    public void keepsSource() {
+        PromptTemplate template = PromptTemplate.compile("test", "{scene}", SLOTS);
+        assertEquals("test", template.getName());
+        assertEquals("{scene}", template.getSource());
+    }
+}
@@ -0,0 +1,110 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void returnsCachedImages() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.newFolder("cache"), HOUR, 1 << 20, TestLog.INSTANCE);
+        cache.put("key", image("a.png", 10));
+        cache.put("key", image("b.png", 10));
+        assertEquals(2, cache.get("key", 5).size());
+        assertEquals(1, cache.get("key", 1).size());
+        assertTrue(cache.get("other", 5).isEmpty());
+    }
+
+    @Test
+    public void dropsExpiredImages() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        ResponseCache cache = new ResponseCache(cacheDir, HOUR, 1 << 20, TestLog.INSTANCE);
+        cache.put("key", image("a.png", 10));
+        new File(new File(cacheDir, "key"), "a.png").setLastModified(System.currentTimeMillis() - 2 * HOUR);
+        assertTrue(cache.get("key", 5).isEmpty());
+        assertFalse(new File(cacheDir, "key").exists());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        ResponseCache cache = new ResponseCache(cacheDir, HOUR, 150, TestLog.INSTANCE);
+        cache.put("old", image("a.png", 100));
+        cache.put("new", image("b.png", 100));
+        setAccessTime(cacheDir, "old", System.currentTimeMillis() - 60 * 1000);
+        cache.trim();
+        assertFalse(new File(cacheDir, "old").exists());
+        assertTrue(new File(cacheDir, "new").exists());
+    }
+
+    @Test
+    public void getRefreshesAccessTime() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        ResponseCache cache = new ResponseCache(cacheDir, HOUR, 150, TestLog.INSTANCE);
+        cache.put("first", image("a.png", 100));
+        cache.put("second", image("b.png", 100));
+        long now = System.currentTimeMillis();
+        setAccessTime(cacheDir, "first", now - 120 * 1000);
+        setAccessTime(cacheDir, "second", now - 60 * 1000);
+        List<File> hits = cache.get("first", 1);
+        assertEquals(1, hits.size());
+        cache.trim();
+        assertTrue(new File(cacheDir, "first").exists());
+        assertFalse(new File(cacheDir, "second").exists());
+    }
+
+    @Test
+    public void expiredFilesDoNotMakeEntryLookRecent() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        ResponseCache cache = new ResponseCache(cacheDir, HOUR, 150, TestLog.INSTANCE);
+        cache.put("stale", image("a.png", 100));
+        cache.put("stale", image("b.png", 1));
+        cache.put("fresh", image("c.png", 100));
+        long now = System.currentTimeMillis();
+        // 旧条目中有一张过期的图片，删除它会更新目录的修改时间，不应影响淘汰顺序
+        new File(new File(cacheDir, "stale"), "b.png").setLastModified(now - 2 * HOUR);
+        setAccessTime(cacheDir, "stale", now - 60 * 1000);
+        cache.trim();
+        assertFalse(new File(cacheDir, "stale").exists());
+        assertTrue(new File(cacheDir, "fresh").exists());
+    }
+
+    @Test
+    public void entryWithoutAccessMarkerIsEvictedFirst() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        ResponseCache cache = new ResponseCache(cacheDir, HOUR, 150, TestLog.INSTANCE);
+        cache.put("old", image("a.png", 100));
+        cache.put("unmarked", image("b.png", 100));
+        setAccessTime(cacheDir, "old", System.currentTimeMillis() - 60 * 1000);
+        assertTrue(new File(new File(cacheDir, "unmarked"), ResponseCache.ACCESS_MARKER).delete());
+        cache.trim();
+        assertFalse(new File(cacheDir, "unmarked").exists());
+        assertTrue(new File(cacheDir, "old").exists());
+    }
+
+    private File image(String name, int size) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        return file;
+    }
+
+    private static void setAccessTime(File cacheDir, String key, long time) {
+        assertTrue(new File(new File(cacheDir, key), ResponseCache.ACCESS_MARKER).setLastModified(time));
+    }
+}
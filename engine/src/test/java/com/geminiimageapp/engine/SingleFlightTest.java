@@ -0,0 +1,55 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+    @Test
+    public void followerSharesLeaderResult() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        SingleFlight.Call<String> leader = singleFlight.join("key");
+        SingleFlight.Call<String> follower = singleFlight.join("key");
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> shared = executor.submit(follower::await);
+            leader.complete("result");
+            assertEquals("result", shared.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void differentKeysRunSeparately() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        assertTrue(singleFlight.join("a").isLeader());
+        assertTrue(singleFlight.join("b").isLeader());
+    }
+
+    @Test
+    public void finishedCallIsNotJoined() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        singleFlight.join("key").complete("result");
+        // 完成后再提交相同的请求会重新执行
+        assertTrue(singleFlight.join("key").isLeader());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void followerCannotComplete() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        singleFlight.join("key");
+        singleFlight.join("key").complete("result");
+    }
+}
@@ -0,0 +1,109 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamingBase64Test {
+    // 解码时每次取出的字符数
+    private static final int CHAR_CHUNK = StreamingBase64.CHUNK_BYTES / 3 * 4;
+
+    private static final int[] LENGTHS = {
+            0, 1, 2, 3, 4, 5,
+            StreamingBase64.CHUNK_BYTES - 1, StreamingBase64.CHUNK_BYTES, StreamingBase64.CHUNK_BYTES + 1,
+            StreamingBase64.CHUNK_BYTES * 3 + 2
+    };
+
+    @Test
+    public void encodeMatchesJdk() throws IOException {
+        for (int length : LENGTHS) {
+            byte[] data = randomBytes(length);
+            assertEquals("长度 " + length, Base64.getEncoder().encodeToString(data), encode(data, length));
+            // 预计长度未知时结果相同
+            assertEquals("长度 " + length, Base64.getEncoder().encodeToString(data), encode(data, -1));
+        }
+    }
+
+    @Test
+    public void decodeMatchesJdk() throws IOException {
+        for (int length : LENGTHS) {
+            byte[] data = randomBytes(length);
+            assertArrayEquals("长度 " + length, data, decode(Base64.getEncoder().encodeToString(data)));
+        }
+    }
+
+    @Test
+    public void decodeAcceptsMissingPadding() throws IOException {
+        for (int length = 0; length < 8; length++) {
+            byte[] data = randomBytes(length);
+            assertArrayEquals("长度 " + length, data, decode(Base64.getEncoder().withoutPadding().encodeToString(data)));
+        }
+    }
+
+    @Test
+    public void decodeSkipsLineBreaks() throws IOException {
+        byte[] data = randomBytes(StreamingBase64.CHUNK_BYTES * 2 + 1);
+        String mime = Base64.getMimeEncoder().encodeToString(data);
+        assertArrayEquals(data, decode(mime));
+    }
+
+    @Test
+    public void decodeSkipsWhitespaceAcrossChunkBoundaries() throws IOException {
+        byte[] data = randomBytes(StreamingBase64.CHUNK_BYTES * 2);
+        String plain = Base64.getEncoder().encodeToString(data);
+        // 在取字符的块边界附近插入空白，使一组4个字符跨越两块
+        for (int offset = -3; offset <= 3; offset++) {
+            int split = CHAR_CHUNK + offset;
+            String text = plain.substring(0, split) + " \t\r\n" + plain.substring(split);
+            assertArrayEquals("偏移 " + offset, data, decode(text));
+        }
+    }
+
+    @Test
+    public void decodeStopsAtPadding() throws IOException {
+        byte[] data = randomBytes(4);
+        assertArrayEquals(data, decode(Base64.getEncoder().encodeToString(data) + "\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsInvalidCharacter() throws IOException {
+        decode("QUJD*EVG");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsTruncatedGroup() throws IOException {
+        decode("QUJDR");
+    }
+
+    @Test
+    public void encodeReturnsNullOverLimit() throws IOException {
+        byte[] data = randomBytes(1000);
+        assertNull(StreamingBase64.encode(Channels.newChannel(new ByteArrayInputStream(data)), data.length, 999));
+    }
+
+    private static String encode(byte[] data, long expectedLength) throws IOException {
+        return StreamingBase64.encode(Channels.newChannel(new ByteArrayInputStream(data)), expectedLength, Long.MAX_VALUE);
+    }
+
+    private static byte[] decode(String base64) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = StreamingBase64.decode(base64, Channels.newChannel(out));
+        assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,28 @@
+package com.geminiimageapp.engine;
+
+/**
+ * 测试中使用的日志，不输出任何内容
+ */
+class TestLog implements EngineLog {
+    static final TestLog INSTANCE = new TestLog();
+
+    @Override
+    public void i(String tag, String message) {
+    }
+
+    @Override
+    public void d(String tag, String message) {
+    }
+
+    @Override
+    public void w(String tag, String message) {
+    }
+
+    @Override
+    public void e(String tag, String message, Throwable throwable) {
+    }
+
+    @Override
+    public void e(String tag, String message) {
+    }
+}
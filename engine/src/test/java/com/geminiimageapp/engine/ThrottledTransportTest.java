@@ -0,0 +1,103 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThrottledTransportTest {
+
+    @Test
+    public void limitsConcurrencyOnlyWithoutTokenBucket() throws Exception {
+        AdaptiveConcurrencyLimit limit = limit();
+        ThrottledTransport transport = new ThrottledTransport(new StatusTransport(200), null, limit, TestLog.INSTANCE);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", transport.send("key", "{}"));
+        }
+        assertTrue(limit.getLimit() > 4);
+    }
+
+    @Test
+    public void rateLimitHalvesConcurrency() {
+        AdaptiveConcurrencyLimit limit = limit();
+        TokenBucket bucket = new TokenBucket(60000, 5);
+        sendExpectingFailure(new ThrottledTransport(new StatusTransport(429), bucket, limit, TestLog.INSTANCE));
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void clientErrorKeepsConcurrency() {
+        AdaptiveConcurrencyLimit limit = limit();
+        sendExpectingFailure(new ThrottledTransport(new StatusTransport(400), null, limit, TestLog.INSTANCE));
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void cancelledRequestKeepsConcurrency() {
+        AdaptiveConcurrencyLimit limit = limit();
+        Transport cancelled = new StatusTransport(0) {
+            @Override
+            public String send(String apiKey, String requestJson) throws GeminiException {
+                // 用户取消任务时线程被中断，OkHttpTransport抛出状态码0的异常
+                Thread.currentThread().interrupt();
+                return super.send(apiKey, requestJson);
+            }
+        };
+        try {
+            sendExpectingFailure(new ThrottledTransport(cancelled, null, limit, TestLog.INSTANCE));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void keyPoolExhaustionKeepsConcurrency() {
+        AdaptiveConcurrencyLimit limit = limit();
+        Transport exhausted = new StatusTransport(200) {
+            @Override
+            public String send(String apiKey, String requestJson) throws GeminiException {
+                throw new KeyPoolExhaustedException("所有API密钥都在冷却中");
+            }
+        };
+        sendExpectingFailure(new ThrottledTransport(exhausted, null, limit, TestLog.INSTANCE));
+        assertEquals(4, limit.getLimit());
+    }
+
+    private static void sendExpectingFailure(Transport transport) {
+        try {
+            transport.send("key", "{}");
+            fail("请求应该失败");
+        } catch (GeminiException expected) {
+        }
+    }
+
+    private static AdaptiveConcurrencyLimit limit() {
+        return new AdaptiveConcurrencyLimit(4, 1, 16, 2.0, TestLog.INSTANCE);
+    }
+
+    /**
+     * 返回固定状态码的传输，200表示成功
+     */
+    private static class StatusTransport implements Transport {
+        private final int status;
+
+        StatusTransport(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "test";
+        }
+
+        @Override
+        public String send(String apiKey, String requestJson) throws GeminiException {
+            if (status != 200) {
+                throw new GeminiException("请求失败", status);
+            }
+            return "ok";
+        }
+    }
+}
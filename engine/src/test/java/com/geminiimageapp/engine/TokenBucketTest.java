@@ -0,0 +1,55 @@
+package com.geminiimageapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void allowsBurstWithoutWaiting() throws Exception {
+        TokenBucket bucket = new TokenBucket(60, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.acquire());
+        }
+    }
+
+    @Test
+    public void waitsForRefillAfterBurst() throws Exception {
+        // 每分钟600个，每100ms补充一个令牌
+        TokenBucket bucket = new TokenBucket(600, 1);
+        assertEquals(0, bucket.acquire());
+        long waited = bucket.acquire();
+        assertTrue("等待了 " + waited + "ms", waited >= 90 && waited < 1000);
+    }
+
+    @Test
+    public void doesNotSaveMoreThanBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(600, 2);
+        // 空闲期间补充的令牌不超过burst
+        Thread.sleep(300);
+        assertEquals(0, bucket.acquire());
+        assertEquals(0, bucket.acquire());
+        long waited = bucket.acquire();
+        assertTrue("等待了 " + waited + "ms", waited >= 50);
+    }
+
+    @Test
+    public void drainMakesNextRequestWait() throws Exception {
+        TokenBucket bucket = new TokenBucket(600, 5);
+        bucket.drain();
+        long waited = bucket.acquire();
+        assertTrue("等待了 " + waited + "ms", waited >= 90 && waited < 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroRate() {
+        new TokenBucket(0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroBurst() {
+        new TokenBucket(60, 0);
+    }
+}